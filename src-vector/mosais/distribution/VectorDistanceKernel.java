@@ -0,0 +1,75 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Compares a vector of neighbouring pixels against each candidate at once, using the
+ * widest int vectors the processor has. Squared distances are kept in ints, so every
+ * coordinate must be at most DistanceKernel.MAX_VECTOR_COORDINATE. Loaded by name from
+ * DistanceKernel, and only usable when the jdk.incubator.vector module is present. It
+ * is kept in its own source folder, compiled only with that module, so that the main
+ * sources build on any JDK.
+ *
+ * @author Andrew Trismen
+ */
+final class VectorDistanceKernel extends DistanceKernel {
+	
+	/** Shape of the vectors, 8 ints wide with AVX2 and 16 with AVX-512 */
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	/** Offset of each lane from the first pixel of a vector */
+	private static final IntVector LANE_OFFSETS = IntVector.zero(SPECIES).addIndex(1);
+	
+	@Override
+	public int getWidth() {
+		return SPECIES.length();
+	}
+	
+	@Override
+	public void closestRow(int[] candidateX, int[] candidateY, int[] ids, int count, 
+			int x0, int y, int length, int[] labels, int offset) {
+		int lanes = SPECIES.length();
+		int i = 0;
+		for (; i + lanes <= length; i += lanes) {
+			IntVector pixelX = LANE_OFFSETS.add(x0 + i);
+			IntVector closestDistance = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+			IntVector closest = IntVector.zero(SPECIES);
+			for (int c = 0; c < count; c++) {
+				int dy = candidateY[c] - y;
+				IntVector dx = pixelX.sub(candidateX[c]);
+				IntVector distance = dx.mul(dx).add(dy * dy);
+				VectorMask<Integer> closer = distance.lt(closestDistance);
+				closestDistance = closestDistance.blend(distance, closer);
+				closest = closest.blend(c, closer);
+			}
+			closest.intoArray(labels, offset + i);
+			for (int lane = offset + i; lane < offset + i + lanes; lane++) {
+				labels[lane] = ids[labels[lane]];
+			}
+		}
+		if (i < length) {
+			scalar().closestRow(candidateX, candidateY, ids, count, x0 + i, y, length - i, labels, offset + i);
+		}
+	}
+}
@@ -122,6 +122,9 @@ public class MosaisGUI extends javax.swing.JFrame {
         startBtn = new javax.swing.JButton();
         saveButton = new javax.swing.JButton();
         pointsOnlyBtn = new javax.swing.JCheckBox();
+        errorLabel = new javax.swing.JLabel();
+        errorSlider = new javax.swing.JSlider();
+        countErrorBtn = new javax.swing.JCheckBox();
         menuBar = new javax.swing.JMenuBar();
         fileMenu = new javax.swing.JMenu();
         openItem = new javax.swing.JMenuItem();
@@ -246,6 +249,20 @@ public class MosaisGUI extends javax.swing.JFrame {
             }
         });
 
+        errorLabel.setText("Error");
+
+        errorSlider.setMajorTickSpacing(1);
+        errorSlider.setMaximum(mosais.controller.Mosais.ERROR_BOUNDS.length - 1);
+        errorSlider.setPaintTicks(true);
+        errorSlider.setSnapToTicks(true);
+        errorSlider.setToolTipText("Approximate the closest points, searching per pixel, for images under a megapixel");
+        errorSlider.setValue(0);
+        errorSlider.setEnabled(false);
+
+        countErrorBtn.setText("Count Error");
+        countErrorBtn.setEnabled(false);
+        countErrorBtn.setToolTipText("Compare an approximate mosaic to an exact one, which takes longer than making it");
+
         javax.swing.GroupLayout controlPanelLayout = new javax.swing.GroupLayout(controlPanel);
         controlPanel.setLayout(controlPanelLayout);
         controlPanelLayout.setHorizontalGroup(
@@ -264,7 +281,10 @@ public class MosaisGUI extends javax.swing.JFrame {
                             .addComponent(densityLabel)
                             .addComponent(densitySlider, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(plotTypePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                            .addComponent(pointsOnlyBtn))))
+                            .addComponent(pointsOnlyBtn)
+                            .addComponent(errorLabel)
+                            .addComponent(errorSlider, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(countErrorBtn))))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         controlPanelLayout.setVerticalGroup(
@@ -277,6 +297,10 @@ public class MosaisGUI extends javax.swing.JFrame {
                 .addComponent(plotTypePanel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(pointsOnlyBtn)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(errorLabel)
+                .addComponent(errorSlider, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addComponent(countErrorBtn)
                 .addGroup(controlPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(controlPanelLayout.createSequentialGroup()
                         .addGap(18, 18, 18)
@@ -442,7 +466,14 @@ public class MosaisGUI extends javax.swing.JFrame {
         //get plot type
         String plotType = randomPlot.isSelected() ? "RANDOM" : "UNIFORM";
         
-        controller.start(fullImage, densitySlider.getValue(), plotType, pointsOnlyBtn.isSelected());
+        controller.start(fullImage, densitySlider.getValue(), plotType, 
+        		pointsOnlyBtn.isSelected(), errorSlider.getValue());
+        //show how many pixels the approximation got wrong, only when asked as it relabels the image
+        if (countErrorBtn.isSelected() && controller.isApproximate()) {
+        	errorLabel.setText("Error (" + controller.countInexactPixels() + " px)");
+        } else {
+        	errorLabel.setText("Error");
+        }
         
         redrawImage();
         
@@ -515,6 +546,9 @@ public class MosaisGUI extends javax.swing.JFrame {
     private javax.swing.JMenuItem aboutItem;
     private javax.swing.JPanel controlPanel;
     private javax.swing.JLabel densityLabel;
+    private javax.swing.JLabel errorLabel;
+    private javax.swing.JSlider errorSlider;
+    private javax.swing.JCheckBox countErrorBtn;
     private javax.swing.JSlider densitySlider;
     private javax.swing.JPanel drawContainer;
     private javax.swing.JMenuItem exitItem;
@@ -589,6 +623,7 @@ public class MosaisGUI extends javax.swing.JFrame {
 					startBtn.setEnabled(true);
 					saveButton.setEnabled(false);
 					saveItem.setEnabled(false);
+					updateErrorControls();
 				} else {
 					System.err.println("No input file loaded");
 				}
@@ -651,6 +686,7 @@ public class MosaisGUI extends javax.swing.JFrame {
 			saveButton.setEnabled(false);
 			saveItem.setEnabled(false);
 			fullImage = new BufferedImage(POINTS_DIM, POINTS_DIM, BufferedImage.TYPE_INT_RGB);
+			updateErrorControls();
 		}	
     }
     
@@ -701,9 +737,21 @@ public class MosaisGUI extends javax.swing.JFrame {
 			startBtn.setEnabled(false);
 			saveButton.setEnabled(false);
 			saveItem.setEnabled(false);
+			updateErrorControls();
 		}    	
     }
     
+    /**
+     * Enable the error level controls only when the loaded image would be labelled 
+     * approximately, as points only runs and large images are always exact.
+     */
+    private void updateErrorControls() {
+    	boolean approximate = fullImage != null && !pointsOnlyBtn.isSelected() 
+    			&& mosais.controller.Mosais.canApproximate(fullImage);
+    	errorSlider.setEnabled(approximate);
+    	countErrorBtn.setEnabled(approximate);
+    }
+    
     private void flushImage(BufferedImage image) {
     	if (image != null) {
     		image.flush();
@@ -23,7 +23,9 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import mosais.GUI.MosaisGUI;
 import mosais.distribution.*;
+import mosais.model.DistanceTransformEngine;
 import mosais.model.Tesselation;
+import mosais.model.TreeSearchEngine;
 
 /**
  * A program to add a mosaic effect to any image.
@@ -38,9 +40,18 @@ public class Mosais {
 	/** Difference between density levels for fractional area determination */
 	public static final double FRAC_AREA_STEP = 600;
 	
+	/** Images with at least this many pixels are labelled with the distance transform */
+	public static final int LARGE_IMAGE_PIXELS = 1000000;
+	
+	/** Error bound of the closest point searches at each level of approximation */
+	public static final double[] ERROR_BOUNDS = {0, 0.05, 0.25, 1};
+	
 	/** instance of a tesselation */ 
 	private Tesselation tesselation;
 	
+	/** Whether the last mosaic was labelled with an approximate search */
+	private boolean approximate;
+	
 	/** instance of program GUI */
 	private MosaisGUI gui;
 	
@@ -63,11 +74,15 @@ public class Mosais {
 	 * @param density Magnitude of density of points in distribution.
 	 * @param type Type of distribution, Random or Uniform.
 	 * @param pointsOnly Whether to show only distribution points.
+	 * @param errorLevel Level of approximation of the mosaic, 0 for exact, up to the 
+	 * number of error bounds less one. Ignored for images that cannot be approximated,
+	 * see canApproximate.
 	 */
 	public void start(BufferedImage image, 
 			int density, 
 			String type, 
-			boolean pointsOnly) {
+			boolean pointsOnly,
+			int errorLevel) {
 		
 		//numPoints calculations are based on the idea of the fractional area
 		//the fractional area is the theoretical area surrounding a uniform
@@ -87,7 +102,10 @@ public class Mosais {
 			//determine number of points as whole area / frac area
 			
 			int numPoints = (int)(image.getWidth() * image.getHeight() / fractionalArea);
-			PlotTree tree = new RandomPlot(numPoints, image.getWidth(), image.getHeight());
+			// random points clump, which makes a quadtree deep in places, while a k-d tree
+			// splits at the median and stays balanced
+			PlotTree tree = new RandomPlot(numPoints, image.getWidth(), image.getHeight(), 
+					SpatialIndex.Type.KD_TREE);
 			tesselation = new Tesselation(image, tree);
 			
 		// in the case of the poisson disc distribution, we want to determine density
@@ -100,10 +118,25 @@ public class Mosais {
 		// numPoints = sqrt(fracArea)
 		} else if (type.equalsIgnoreCase("UNIFORM")) {
 			int numPoints = (int)Math.sqrt(fractionalArea);
-			PlotTree tree = new PoissonPlot(numPoints, image.getWidth(), image.getHeight());
+			// points are evenly spread at a known spacing, so a grid finds neighbours
+			// by looking at a ring or two of cells
+			PlotTree tree = new PoissonPlot(numPoints, image.getWidth(), image.getHeight(), 
+					SpatialIndex.Type.GRID);
 			tesselation = new Tesselation(image, tree);
 		}
 		
+		// the distance transform costs the same per pixel however many points there are,
+		// and is faster than searching the tree once the image is large, even approximately
+		double epsilon = ERROR_BOUNDS[Math.min(Math.max(errorLevel, 0), ERROR_BOUNDS.length - 1)];
+		if (!canApproximate(image)) {
+			tesselation.setEngine(new DistanceTransformEngine());
+		} else if (epsilon > 0) {
+			// approximate searches skip most of the tree, but only when searching per pixel
+			tesselation.setEpsilon(epsilon);
+			tesselation.setEngine(new TreeSearchEngine());
+		}
+		approximate = canApproximate(image) && epsilon > 0 && !pointsOnly;
+		
 		tesselation.createDistribution();
 		
 		//Apply the distribution data either as a mosaic or points
@@ -120,6 +153,37 @@ public class Mosais {
 		
 	}
 	
+	/**
+	 * Check if an image is small enough to be labelled approximately. Larger images are
+	 * always labelled exactly with the distance transform, whatever the error level.
+	 * 
+	 * @param image Image to apply mosaic to.
+	 * @return True if the error level applies to the image, false otherwise.
+	 */
+	public static boolean canApproximate(BufferedImage image) {
+		return (long)image.getWidth() * image.getHeight() < LARGE_IMAGE_PIXELS;
+	}
+	
+	/**
+	 * @return True if the last mosaic was labelled with an approximate search, false if
+	 * it was exact or only points were drawn.
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+	
+	/**
+	 * Count the pixels of the last mosaic colored differently from an exact mosaic. This
+	 * labels the whole image again exactly, so costs more than the approximate mosaic,
+	 * and is only worth calling to see how much an error level changes.
+	 * 
+	 * @return Number of pixels not given their closest point, 0 if the last mosaic was
+	 * not approximate.
+	 */
+	public int countInexactPixels() {
+		return approximate ? tesselation.countInexactPixels() : 0;
+	}
+	
 	/**
 	 * To run after completing a run of processing. Nulls references to the 
 	 * data structures to save space and prepare for another run.
@@ -0,0 +1,813 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The Delaunay triangulation of a set of sites, kept only as the sites joined to each
+ * site, in compressed rows: the neighbours of site i are neighbours[offsets[i]] up to
+ * neighbours[offsets[i + 1]]. In a Delaunay triangulation a site that is not the
+ * closest to a location always has a neighbour closer to it, so stepping from any site
+ * to its closest neighbour until none is closer ends at the closest site.
+ *
+ * The triangulation is built by sweeping out from a seed triangle in the middle of the
+ * sites, as in S-hull and Delaunator. Sites are added in order of distance from the
+ * seed, so each lies outside the hull of the sites before it, and is joined to every
+ * hull edge it can see. Edges are then flipped until the circle through each triangle
+ * holds no other site. The orientation and circle tests are exact on the integer
+ * coordinates, so no rounding can leave a wrong edge. Sites at the same location as
+ * another are left out, and searched as that site.
+ *
+ * @author Andrew Trismen
+ */
+final class DelaunayGraph {
+	
+	/** Twin of a half edge on the hull, which has none */
+	private static final int NONE = -1;
+	
+	/** Circle tests on coordinates this close together fit in a long */
+	private static final int EXACT_LIMIT = 1 << 14;
+	
+	/** First position in neighbours of the neighbours of each site, and the end */
+	private final int[] offsets;
+	
+	/** Sites joined to each site, in rows given by offsets */
+	private final int[] neighbours;
+	
+	/** Site of the triangulation at the location of each site, itself for most sites */
+	private final int[] vertex;
+	
+	/** X coordinate of each site */
+	private final int[] pointX;
+	
+	/** Y coordinate of each site */
+	private final int[] pointY;
+	
+	/**
+	 * Construct a graph from its rows of neighbours.
+	 * 
+	 * @param x X coordinate of each site.
+	 * @param y Y coordinate of each site.
+	 * @param offsets First position in neighbours of the neighbours of each site, and the end.
+	 * @param neighbours Sites joined to each site.
+	 * @param vertex Site of the graph at the location of each site.
+	 */
+	private DelaunayGraph(int[] x, int[] y, int[] offsets, int[] neighbours, int[] vertex) {
+		this.pointX = x;
+		this.pointY = y;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.vertex = vertex;
+	}
+	
+	/**
+	 * Make the graph of a finished triangulation.
+	 *
+	 * @param sweep Triangulation of the sites.
+	 * @return The graph, or null if a site was left out that is not at the location of 
+	 * a site in the triangulation.
+	 */
+	private static DelaunayGraph triangulated(Sweep sweep) {
+		int[] x = sweep.pointX;
+		int[] y = sweep.pointY;
+		int count = sweep.count;
+		int[] triangles = sweep.triangles;
+		int[] halfedges = sweep.halfedges;
+		int edges = sweep.trianglesLength;
+		
+		//each half edge joins its start to its end, hull edges also join the end to the start
+		int[] offsets = new int[count + 1];
+		for (int e = 0; e < edges; e++) {
+			offsets[triangles[e] + 1]++;
+			if (halfedges[e] == NONE) {
+				offsets[triangles[nextHalfedge(e)] + 1]++;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] neighbours = new int[offsets[count]];
+		int[] fill = Arrays.copyOf(offsets, count);
+		for (int e = 0; e < edges; e++) {
+			int from = triangles[e];
+			int to = triangles[nextHalfedge(e)];
+			neighbours[fill[from]++] = to;
+			if (halfedges[e] == NONE) {
+				neighbours[fill[to]++] = from;
+			}
+		}
+		
+		int[] vertex = new int[count];
+		for (int i = 0; i < count; i++) {
+			vertex[i] = i;
+		}
+		DelaunayGraph graph = new DelaunayGraph(x, y, offsets, neighbours, vertex);
+		
+		//sites left out must be at the location of a site in the triangulation
+		int previous = sweep.hullStart;
+		for (int k = 0; k < count; k++) {
+			int site = sweep.ids[k];
+			if (sweep.added[site]) {
+				previous = site;
+				continue;
+			}
+			int found = graph.nearest(x[site], y[site], previous);
+			if (x[found] != x[site] || y[found] != y[site]) {
+				return null;
+			}
+			vertex[site] = found;
+		}
+		return graph;
+	}
+	
+	/**
+	 * Join every site along a line to the next sites either way along it.
+	 * 
+	 * @param x X coordinate of each site.
+	 * @param y Y coordinate of each site.
+	 * @param count Number of sites, all on one line.
+	 * @return The graph of the sites.
+	 */
+	private static DelaunayGraph chain(final int[] x, final int[] y, int count) {
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return x[a] != x[b] ? Integer.compare(x[a], x[b]) : Integer.compare(y[a], y[b]);
+			}
+		});
+		
+		//the first site at each location along the line stands for the others there
+		int[] vertex = new int[count];
+		int[] line = new int[count];
+		int locations = 0;
+		for (int site : order) {
+			if (locations > 0 && x[site] == x[line[locations - 1]] && y[site] == y[line[locations - 1]]) {
+				vertex[site] = line[locations - 1];
+			} else {
+				vertex[site] = site;
+				line[locations++] = site;
+			}
+		}
+		int[] offsets = new int[count + 1];
+		for (int k = 0; k < locations; k++) {
+			offsets[line[k] + 1] = (k > 0 ? 1 : 0) + (k < locations - 1 ? 1 : 0);
+		}
+		for (int i = 0; i < count; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] neighbours = new int[offsets[count]];
+		for (int k = 0; k < locations; k++) {
+			int position = offsets[line[k]];
+			if (k > 0) {
+				neighbours[position++] = line[k - 1];
+			}
+			if (k < locations - 1) {
+				neighbours[position] = line[k + 1];
+			}
+		}
+		return new DelaunayGraph(x, y, offsets, neighbours, vertex);
+	}
+	
+	/**
+	 * Triangulate a set of sites.
+	 *
+	 * @param x X coordinate of each site, not modified while the graph is in use.
+	 * @param y Y coordinate of each site, not modified while the graph is in use.
+	 * @param count Number of sites.
+	 * @return The graph of the triangulation, or null if the sites all lie on one line.
+	 */
+	static DelaunayGraph build(int[] x, int[] y, int count) {
+		Sweep sweep = new Sweep(x, y, count);
+		return sweep.run() ? triangulated(sweep) : null;
+	}
+	
+	/**
+	 * Join every site to the sites whose Voronoi cells share an edge with its own, which
+	 * are its neighbours in the Delaunay triangulation, or the next sites either way
+	 * along the line if the sites all lie on one line.
+	 *
+	 * @param x X coordinate of each site, not modified while the graph is in use.
+	 * @param y Y coordinate of each site, not modified while the graph is in use.
+	 * @param count Number of sites.
+	 * @return The graph of the sites, or null if a site could not be triangulated.
+	 */
+	static DelaunayGraph connect(int[] x, int[] y, int count) {
+		Sweep sweep = new Sweep(x, y, count);
+		return sweep.run() ? triangulated(sweep) : chain(x, y, count);
+	}
+	
+	/**
+	 * Make a graph joining the same sites as this one, reading their coordinates from a
+	 * copy of the arrays. The rows of neighbours are shared, as neither graph changes them.
+	 *
+	 * @param x X coordinate of each site, the same as those of this graph.
+	 * @param y Y coordinate of each site, the same as those of this graph.
+	 * @return The graph over the copied coordinates.
+	 */
+	DelaunayGraph over(int[] x, int[] y) {
+		return new DelaunayGraph(x, y, offsets, neighbours, vertex);
+	}
+	
+	/**
+	 * @return Number of sites in the graph, including those at the location of another.
+	 */
+	int size() {
+		return vertex.length;
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return Number of sites joined to the site, 0 if it is at the location of another.
+	 */
+	int getDegree(int site) {
+		return offsets[site + 1] - offsets[site];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @param k Position of the neighbour, less than the degree of the site.
+	 * @return Index of the neighbour.
+	 */
+	int getNeighbour(int site, int k) {
+		return neighbours[offsets[site] + k];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return Site of the graph at the location of the site, the site itself unless it 
+	 * was left out as being at the location of another.
+	 */
+	int getVertex(int site) {
+		return vertex[site];
+	}
+	
+	/**
+	 * Find the site closest to a location by walking the triangulation from a site,
+	 * stepping to the closest neighbour as long as it is closer than the current site.
+	 *
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index of the site to start from.
+	 * @return Index of the site closest to x, y.
+	 */
+	int nearest(int x, int y, int start) {
+		int current = vertex[start];
+		long dx = pointX[current] - x;
+		long dy = pointY[current] - y;
+		long best = dx * dx + dy * dy;
+		while (true) {
+			int closest = current;
+			for (int k = offsets[current], end = offsets[current + 1]; k < end; k++) {
+				int neighbour = neighbours[k];
+				dx = pointX[neighbour] - x;
+				dy = pointY[neighbour] - y;
+				long distance = dx * dx + dy * dy;
+				if (distance < best) {
+					best = distance;
+					closest = neighbour;
+				}
+			}
+			if (closest == current) {
+				return current;
+			}
+			current = closest;
+		}
+	}
+	
+	/**
+	 * @param e A half edge.
+	 * @return The half edge after e in its triangle.
+	 */
+	private static int nextHalfedge(int e) {
+		return e % 3 == 2 ? e - 2 : e + 1;
+	}
+	
+	/**
+	 * The state of a triangulation while it is being built. Triangles are stored as
+	 * three half edges in a row, each named by the site it starts at, and the twin of
+	 * each half edge is the same edge in the neighbouring triangle, or NONE on the hull.
+	 * The hull is a ring of sites, and a hash of the angle of each hull site around the
+	 * seed finds a hull edge near a new site quickly.
+	 */
+	private static final class Sweep {
+		
+		/** X coordinate of each site */
+		final int[] pointX;
+		
+		/** Y coordinate of each site */
+		final int[] pointY;
+		
+		/** Number of sites */
+		final int count;
+		
+		/** Sites in the order they are added */
+		final int[] ids;
+		
+		/** Whether each site was added to the triangulation */
+		final boolean[] added;
+		
+		/** Site each half edge starts at, three to a triangle */
+		final int[] triangles;
+		
+		/** Twin of each half edge, or NONE on the hull */
+		final int[] halfedges;
+		
+		/** Number of half edges in use */
+		int trianglesLength;
+		
+		/** Previous site around the hull of each hull site */
+		private final int[] hullPrev;
+		
+		/** Next site around the hull of each hull site, or the site itself once removed */
+		private final int[] hullNext;
+		
+		/** Half edge of the triangle on the hull edge starting at each hull site */
+		private final int[] hullTri;
+		
+		/** Hull site at each angle around the seed, or NONE */
+		private final int[] hullHash;
+		
+		/** A site on the hull */
+		int hullStart;
+		
+		/** Half edges left to check after a flip */
+		private int[] edgeStack = new int[64];
+		
+		/** X coordinate of the centre of the seed triangle */
+		private double centerX;
+		
+		/** Y coordinate of the centre of the seed triangle */
+		private double centerY;
+		
+		/**
+		 * @param x X coordinate of each site.
+		 * @param y Y coordinate of each site.
+		 * @param count Number of sites.
+		 */
+		Sweep(int[] x, int[] y, int count) {
+			this.pointX = x;
+			this.pointY = y;
+			this.count = count;
+			ids = new int[count];
+			added = new boolean[count];
+			int maxTriangles = Math.max(2 * count - 5, 1);
+			triangles = new int[maxTriangles * 3];
+			halfedges = new int[maxTriangles * 3];
+			hullPrev = new int[count];
+			hullNext = new int[count];
+			hullTri = new int[count];
+			hullHash = new int[(int)Math.ceil(Math.sqrt(count))];
+		}
+		
+		/**
+		 * Triangulate the sites.
+		 *
+		 * @return False if the sites all lie on one line, true otherwise.
+		 */
+		boolean run() {
+			if (count < 3) {
+				return false;
+			}
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				minX = Math.min(minX, pointX[i]);
+				minY = Math.min(minY, pointY[i]);
+				maxX = Math.max(maxX, pointX[i]);
+				maxY = Math.max(maxY, pointY[i]);
+				ids[i] = i;
+			}
+			double middleX = (minX + maxX) / 2;
+			double middleY = (minY + maxY) / 2;
+			
+			//seed with the site closest to the middle, the site closest to that, and the
+			//site making the smallest circle with both
+			int i0 = 0;
+			double minDistance = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				double dx = pointX[i] - middleX;
+				double dy = pointY[i] - middleY;
+				if (dx * dx + dy * dy < minDistance) {
+					i0 = i;
+					minDistance = dx * dx + dy * dy;
+				}
+			}
+			int i1 = NONE;
+			long minDistanceSq = Long.MAX_VALUE;
+			for (int i = 0; i < count; i++) {
+				long distance = distanceSq(i0, i);
+				if (distance > 0 && distance < minDistanceSq) {
+					i1 = i;
+					minDistanceSq = distance;
+				}
+			}
+			if (i1 == NONE) {
+				return false;
+			}
+			int i2 = NONE;
+			double minRadius = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				if (orient(i0, i1, i) != 0) {
+					double radius = circumradiusSq(i0, i1, i);
+					if (radius < minRadius) {
+						i2 = i;
+						minRadius = radius;
+					}
+				}
+			}
+			if (i2 == NONE) {
+				return false;
+			}
+			if (orient(i0, i1, i2) > 0) {
+				int swap = i1;
+				i1 = i2;
+				i2 = swap;
+			}
+			
+			//add the sites in order of distance from the centre of the seed triangle
+			setCenter(i0, i1, i2);
+			final double[] distances = new double[count];
+			for (int i = 0; i < count; i++) {
+				double dx = pointX[i] - centerX;
+				double dy = pointY[i] - centerY;
+				distances[i] = dx * dx + dy * dy;
+			}
+			sort(ids, distances, 0, count - 1);
+			
+			hullStart = i0;
+			hullNext[i0] = hullPrev[i2] = i1;
+			hullNext[i1] = hullPrev[i0] = i2;
+			hullNext[i2] = hullPrev[i1] = i0;
+			hullTri[i0] = 0;
+			hullTri[i1] = 1;
+			hullTri[i2] = 2;
+			Arrays.fill(hullHash, NONE);
+			hullHash[hashKey(i0)] = i0;
+			hullHash[hashKey(i1)] = i1;
+			hullHash[hashKey(i2)] = i2;
+			addTriangle(i0, i1, i2, NONE, NONE, NONE);
+			added[i0] = added[i1] = added[i2] = true;
+			
+			int previous = NONE;
+			for (int k = 0; k < count; k++) {
+				int i = ids[k];
+				if (previous != NONE && distanceSq(i, previous) == 0) {
+					continue;
+				}
+				previous = i;
+				if (i == i0 || i == i1 || i == i2) {
+					continue;
+				}
+				
+				//find a hull edge the site can see, starting from the hull near its angle
+				int start = 0;
+				for (int j = 0, key = hashKey(i); j < hullHash.length; j++) {
+					start = hullHash[(key + j) % hullHash.length];
+					if (start != NONE && start != hullNext[start]) {
+						break;
+					}
+				}
+				start = hullPrev[start];
+				int e = start;
+				int q = hullNext[e];
+				while (orient(i, e, q) <= 0) {
+					e = q;
+					if (e == start) {
+						e = NONE;
+						break;
+					}
+					q = hullNext[e];
+				}
+				if (e == NONE) {
+					//at the location of a site already added, which the graph resolves
+					continue;
+				}
+				added[i] = true;
+				
+				int t = addTriangle(e, i, hullNext[e], NONE, NONE, hullTri[e]);
+				hullTri[i] = legalize(t + 2);
+				hullTri[e] = t;
+				
+				//join the site to the visible hull edges after e
+				int n = hullNext[e];
+				q = hullNext[n];
+				while (orient(i, n, q) > 0) {
+					t = addTriangle(n, i, q, hullTri[i], NONE, hullTri[n]);
+					hullTri[i] = legalize(t + 2);
+					hullNext[n] = n;
+					n = q;
+					q = hullNext[n];
+				}
+				
+				//and to the visible hull edges before e
+				if (e == start) {
+					q = hullPrev[e];
+					while (orient(i, q, e) > 0) {
+						t = addTriangle(q, i, e, NONE, hullTri[e], hullTri[q]);
+						legalize(t + 2);
+						hullTri[q] = t;
+						hullNext[e] = e;
+						e = q;
+						q = hullPrev[e];
+					}
+				}
+				
+				hullStart = hullPrev[i] = e;
+				hullNext[e] = hullPrev[n] = i;
+				hullNext[i] = n;
+				hullHash[hashKey(i)] = i;
+				hullHash[hashKey(e)] = e;
+			}
+			return true;
+		}
+		
+		/**
+		 * Flip the edge of a half edge and the edges around it until the triangles on
+		 * both sides of each hold no site inside their circle.
+		 *
+		 * @param a Half edge to check.
+		 * @return The half edge that ends up opposite a after the flips.
+		 */
+		private int legalize(int a) {
+			int stacked = 0;
+			int ar = 0;
+			while (true) {
+				int b = halfedges[a];
+				
+				//the triangles pl p0 pr on a and pr p1 pl on b become p0 p1 pl and p1 p0 pr
+				int a0 = a - a % 3;
+				ar = a0 + (a + 2) % 3;
+				if (b == NONE) {
+					if (stacked == 0) {
+						break;
+					}
+					a = edgeStack[--stacked];
+					continue;
+				}
+				int b0 = b - b % 3;
+				int al = a0 + (a + 1) % 3;
+				int bl = b0 + (b + 2) % 3;
+				int p0 = triangles[ar];
+				int pr = triangles[a];
+				int pl = triangles[al];
+				int p1 = triangles[bl];
+				
+				if (inCircle(p0, pr, pl, p1)) {
+					triangles[a] = p1;
+					triangles[b] = p0;
+					int hbl = halfedges[bl];
+					
+					//the flipped edge was on the hull, so the hull must point at its new half edge
+					if (hbl == NONE) {
+						int e = hullStart;
+						do {
+							if (hullTri[e] == bl) {
+								hullTri[e] = a;
+								break;
+							}
+							e = hullPrev[e];
+						} while (e != hullStart);
+					}
+					link(a, hbl);
+					link(b, halfedges[ar]);
+					link(ar, bl);
+					
+					if (stacked == edgeStack.length) {
+						edgeStack = Arrays.copyOf(edgeStack, stacked * 2);
+					}
+					edgeStack[stacked++] = b0 + (b + 1) % 3;
+				} else {
+					if (stacked == 0) {
+						break;
+					}
+					a = edgeStack[--stacked];
+				}
+			}
+			return ar;
+		}
+		
+		/**
+		 * Add a triangle and make its half edges twins of the given half edges.
+		 *
+		 * @return The first half edge of the triangle.
+		 */
+		private int addTriangle(int i0, int i1, int i2, int a, int b, int c) {
+			int t = trianglesLength;
+			triangles[t] = i0;
+			triangles[t + 1] = i1;
+			triangles[t + 2] = i2;
+			link(t, a);
+			link(t + 1, b);
+			link(t + 2, c);
+			trianglesLength += 3;
+			return t;
+		}
+		
+		/**
+		 * Make two half edges twins.
+		 *
+		 * @param a A half edge.
+		 * @param b A half edge, or NONE to put a on the hull.
+		 */
+		private void link(int a, int b) {
+			halfedges[a] = b;
+			if (b != NONE) {
+				halfedges[b] = a;
+			}
+		}
+		
+		/**
+		 * @param site A site.
+		 * @return Slot in the hull hash for the angle of the site around the seed.
+		 */
+		private int hashKey(int site) {
+			double dx = pointX[site] - centerX;
+			double dy = pointY[site] - centerY;
+			//an angle-like value from 0 to 1, increasing with the angle
+			double p = dx / (Math.abs(dx) + Math.abs(dy));
+			double angle = (dy > 0 ? 3 - p : 1 + p) / 4;
+			int key = (int)Math.floor(angle * hullHash.length) % hullHash.length;
+			return key < 0 ? 0 : key;
+		}
+		
+		/**
+		 * Set the centre to the centre of the circle through three sites.
+		 */
+		private void setCenter(int a, int b, int c) {
+			double dx = pointX[b] - pointX[a];
+			double dy = pointY[b] - pointY[a];
+			double ex = pointX[c] - pointX[a];
+			double ey = pointY[c] - pointY[a];
+			double bl = dx * dx + dy * dy;
+			double cl = ex * ex + ey * ey;
+			double d = 0.5 / (dx * ey - dy * ex);
+			centerX = pointX[a] + (ey * bl - dy * cl) * d;
+			centerY = pointY[a] + (dx * cl - ex * bl) * d;
+		}
+		
+		/**
+		 * @return Squared radius of the circle through three sites not on one line.
+		 */
+		private double circumradiusSq(int a, int b, int c) {
+			double dx = pointX[b] - pointX[a];
+			double dy = pointY[b] - pointY[a];
+			double ex = pointX[c] - pointX[a];
+			double ey = pointY[c] - pointY[a];
+			double bl = dx * dx + dy * dy;
+			double cl = ex * ex + ey * ey;
+			double d = 0.5 / (dx * ey - dy * ex);
+			double x = (ey * bl - dy * cl) * d;
+			double y = (dx * cl - ex * bl) * d;
+			return x * x + y * y;
+		}
+		
+		/**
+		 * @return Squared distance between two sites.
+		 */
+		private long distanceSq(int a, int b) {
+			long dx = pointX[a] - pointX[b];
+			long dy = pointY[a] - pointY[b];
+			return dx * dx + dy * dy;
+		}
+		
+		/**
+		 * @return Twice the signed area of the triangle a b c, the sign giving which way
+		 * it turns, or 0 if the sites lie on one line.
+		 */
+		private long orient(int a, int b, int c) {
+			return (long)(pointX[b] - pointX[a]) * (pointY[c] - pointY[a])
+					- (long)(pointY[b] - pointY[a]) * (pointX[c] - pointX[a]);
+		}
+		
+		/**
+		 * @return True if site p lies strictly inside the circle through a, b and c.
+		 */
+		private boolean inCircle(int a, int b, int c, int p) {
+			long dx = pointX[a] - pointX[p];
+			long dy = pointY[a] - pointY[p];
+			long ex = pointX[b] - pointX[p];
+			long ey = pointY[b] - pointY[p];
+			long fx = pointX[c] - pointX[p];
+			long fy = pointY[c] - pointY[p];
+			long largest = Math.max(Math.max(Math.abs(dx), Math.abs(dy)),
+					Math.max(Math.max(Math.abs(ex), Math.abs(ey)), Math.max(Math.abs(fx), Math.abs(fy))));
+			if (largest < EXACT_LIMIT) {
+				long ap = dx * dx + dy * dy;
+				long bp = ex * ex + ey * ey;
+				long cp = fx * fx + fy * fy;
+				return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+			}
+			
+			//too far apart for a long, which only happens across very large areas
+			BigInteger bdx = BigInteger.valueOf(dx);
+			BigInteger bdy = BigInteger.valueOf(dy);
+			BigInteger bex = BigInteger.valueOf(ex);
+			BigInteger bey = BigInteger.valueOf(ey);
+			BigInteger bfx = BigInteger.valueOf(fx);
+			BigInteger bfy = BigInteger.valueOf(fy);
+			BigInteger ap = bdx.multiply(bdx).add(bdy.multiply(bdy));
+			BigInteger bp = bex.multiply(bex).add(bey.multiply(bey));
+			BigInteger cp = bfx.multiply(bfx).add(bfy.multiply(bfy));
+			return bdx.multiply(bey.multiply(cp).subtract(bp.multiply(bfy)))
+					.subtract(bdy.multiply(bex.multiply(cp).subtract(bp.multiply(bfx))))
+					.add(ap.multiply(bex.multiply(bfy).subtract(bey.multiply(bfx)))).signum() < 0;
+		}
+		
+		/**
+		 * Sort a range of sites by distance with a quicksort, finishing short ranges with
+		 * an insertion sort.
+		 *
+		 * @param order Sites, sorted in place.
+		 * @param distances Distance of each site.
+		 * @param left First position of the range.
+		 * @param right Last position of the range, inclusive.
+		 */
+		private static void sort(int[] order, double[] distances, int left, int right) {
+			while (right - left > 20) {
+				int median = (left + right) >>> 1;
+				int i = left + 1;
+				int j = right;
+				swap(order, median, i);
+				if (distances[order[left]] > distances[order[right]]) {
+					swap(order, left, right);
+				}
+				if (distances[order[i]] > distances[order[right]]) {
+					swap(order, i, right);
+				}
+				if (distances[order[left]] > distances[order[i]]) {
+					swap(order, left, i);
+				}
+				int pivot = order[i];
+				double pivotDistance = distances[pivot];
+				while (true) {
+					do {
+						i++;
+					} while (distances[order[i]] < pivotDistance);
+					do {
+						j--;
+					} while (distances[order[j]] > pivotDistance);
+					if (j < i) {
+						break;
+					}
+					swap(order, i, j);
+				}
+				order[left + 1] = order[j];
+				order[j] = pivot;
+				
+				//recurse into the smaller side and loop on the larger to bound the depth
+				if (right - i + 1 >= j - left) {
+					sort(order, distances, left, j - 1);
+					left = i;
+				} else {
+					sort(order, distances, i, right);
+					right = j - 1;
+				}
+			}
+			for (int i = left + 1; i <= right; i++) {
+				int site = order[i];
+				double distance = distances[site];
+				int j = i - 1;
+				while (j >= left && distances[order[j]] > distance) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = site;
+			}
+		}
+		
+		/**
+		 * Swap two entries of an array.
+		 */
+		private static void swap(int[] array, int i, int j) {
+			int temp = array[i];
+			array[i] = array[j];
+			array[j] = temp;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+/**
+ * A spatial index that finds the point closest to a location by walking the Delaunay
+ * triangulation of the points from a point known to be nearby, stepping to the closest
+ * neighbour of the current point while it is closer. When each pixel is searched from
+ * the point found for the one before it, the walk usually ends after checking the half
+ * dozen neighbours of the start point once or twice, rather than descending a tree.
+ *
+ * The triangulation is built over the points in the index when it is constructed or
+ * loaded, and is dropped by a single insert, as is the case while a distribution is
+ * being placed. The points are also kept in a k-d tree, which answers every search
+ * with no start point, every k nearest and radius search, and closest point searches
+ * while there is no triangulation. Freezing a distribution builds the tree again over
+ * a copy of the sites but keeps the triangulation, which the Voronoi diagram of the 
+ * frozen distribution is then built from as well.
+ *
+ * @author Andrew Trismen
+ */
+public class DelaunayIndex implements SpatialIndex {
+	
+	/** Tree over the same points, for the searches the triangulation cannot answer */
+	private final KdTree tree;
+	
+	/** Triangulation of the points, or null if points were inserted since it was built */
+	private DelaunayGraph graph;
+	
+	/**
+	 * Construct an empty index covering an area with its top left corner at 0, 0.
+	 *
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf of the tree.
+	 * @throws IllegalArgumentException if the area is empty or maxPointsPerNode is less than 1.
+	 */
+	public DelaunayIndex(int width, int height, int maxPointsPerNode) {
+		this(new SiteStore(), width, height, maxPointsPerNode);
+	}
+	
+	/**
+	 * Construct an index covering an area with its top left corner at 0, 0, indexing
+	 * the sites of a store. Any sites already in the store are triangulated in one go.
+	 *
+	 * @param sites Store to keep the points in, possibly holding sites already.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf of the tree.
+	 * @throws IllegalArgumentException if the area is empty, or a site lies outside it, or maxPointsPerNode is less than 1.
+	 */
+	public DelaunayIndex(SiteStore sites, int width, int height, int maxPointsPerNode) {
+		this.tree = new KdTree(sites, width, height, maxPointsPerNode);
+		indexSites();
+	}
+	
+	/**
+	 * Construct an index over a copy of the sites of another, sharing its triangulation
+	 * if it has one rather than triangulating the sites again.
+	 *
+	 * @param source Index whose sites were copied.
+	 * @param sites Copy of the sites of source.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf of the tree.
+	 */
+	DelaunayIndex(DelaunayIndex source, SiteStore sites, int width, int height, int maxPointsPerNode) {
+		this.tree = new KdTree(sites, width, height, maxPointsPerNode);
+		if (source.graph == null) {
+			indexSites();
+		} else {
+			graph = source.graph.over(sites.getXArray(), sites.getYArray());
+		}
+	}
+	
+	@Override
+	public Type getType() {
+		return Type.DELAUNAY;
+	}
+	
+	@Override
+	public SiteStore getSites() {
+		return tree.getSites();
+	}
+	
+	@Override
+	public int size() {
+		return tree.size();
+	}
+	
+	/**
+	 * @return True if the points are triangulated, so closest point searches with a
+	 * start point walk the triangulation, false if they search the tree.
+	 */
+	public boolean isTriangulated() {
+		return graph != null;
+	}
+	
+	@Override
+	public int getX(int index) {
+		return tree.getX(index);
+	}
+	
+	@Override
+	public int getY(int index) {
+		return tree.getY(index);
+	}
+	
+	@Override
+	public boolean contains(int x, int y) {
+		return tree.contains(x, y);
+	}
+	
+	/**
+	 * @return Triangulation of the points, or null if they are not triangulated.
+	 */
+	DelaunayGraph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * Insert a point into the tree. The triangulation is dropped, and is only built
+	 * again by loading points or constructing a new index over the sites.
+	 */
+	@Override
+	public int insert(int x, int y) {
+		int index = tree.insert(x, y);
+		graph = null;
+		return index;
+	}
+	
+	@Override
+	public void load(int[] x, int[] y, int count) {
+		tree.load(x, y, count);
+		indexSites();
+	}
+	
+	/**
+	 * Triangulate every site in the store. Sites all on one line are left to the tree.
+	 */
+	private void indexSites() {
+		SiteStore sites = tree.getSites();
+		graph = DelaunayGraph.build(sites.getXArray(), sites.getYArray(), sites.size());
+	}
+	
+	@Override
+	public long distanceSq(int index, int x, int y) {
+		return tree.distanceSq(index, x, y);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start) {
+		if (graph == null) {
+			return tree.nearest(x, y, start);
+		}
+		return graph.nearest(x, y, start);
+	}
+	
+	@Override
+	public int nearest(int x, int y) {
+		return tree.nearest(x, y);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit) {
+		if (graph == null || start < 0) {
+			return tree.nearest(x, y, start, limit);
+		}
+		int closest = graph.nearest(x, y, start);
+		return tree.distanceSq(closest, x, y) < limit ? closest : start;
+	}
+	
+	/**
+	 * Find the point closest to a location, if any is closer than a given distance. A
+	 * walk of the triangulation visits so few points that it is always exact, so the
+	 * error bound only applies when there is no start point or triangulation.
+	 */
+	@Override
+	public int nearest(int x, int y, int start, long limit, double epsilon) {
+		if (graph == null || start < 0) {
+			return tree.nearest(x, y, start, limit, epsilon);
+		}
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Error bound cannot be negative.");
+		}
+		return nearest(x, y, start, limit);
+	}
+	
+	@Override
+	public int[] kNearest(int x, int y, int k) {
+		return tree.kNearest(x, y, k);
+	}
+	
+	@Override
+	public int kNearest(int x, int y, int k, int[] out) {
+		return tree.kNearest(x, y, k, out);
+	}
+	
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		return tree.withinRadius(x, y, radius);
+	}
+	
+	@Override
+	public boolean anyWithin(int x, int y, int radius) {
+		return tree.anyWithin(x, y, radius);
+	}
+}
@@ -0,0 +1,135 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+/**
+ * Finds the closest of a short list of candidate points to each pixel of a row, the
+ * innermost loop of labelling a tile. A kernel built on the incubating Java Vector API
+ * compares a whole vector of pixels against each candidate at once, 8 or 16 at a time
+ * depending on the processor. It lives in the src-vector folder and is used when that
+ * folder has been compiled onto the class path and the jdk.incubator.vector module has 
+ * been added to the runtime with --add-modules. Plain scalar code is used otherwise. 
+ * Both give exactly the same labels.
+ *
+ * @author Andrew Trismen
+ */
+public abstract class DistanceKernel {
+	
+	/** Largest coordinate whose squared distances fit the int lanes of the vector kernel */
+	static final int MAX_VECTOR_COORDINATE = 32767;
+	
+	/** Kernel of plain Java loops, which works everywhere */
+	private static final DistanceKernel SCALAR = new ScalarKernel();
+	
+	/** Fastest kernel available, the vector kernel if its module is present */
+	private static final DistanceKernel PREFERRED = loadVectorKernel();
+	
+	/**
+	 * Get the fastest kernel that can be used over an area.
+	 * 
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @return The vector kernel if it is available and the area is small enough for its 
+	 * distances, otherwise the scalar kernel.
+	 */
+	public static DistanceKernel forArea(int width, int height) {
+		if (width - 1 > MAX_VECTOR_COORDINATE || height - 1 > MAX_VECTOR_COORDINATE) {
+			return SCALAR;
+		}
+		return PREFERRED;
+	}
+	
+	/**
+	 * @return The kernel of plain Java loops.
+	 */
+	public static DistanceKernel scalar() {
+		return SCALAR;
+	}
+	
+	/**
+	 * Load the vector kernel by name, so that nothing links against the vector module 
+	 * unless it is present.
+	 * 
+	 * @return The vector kernel, or the scalar kernel if the module is missing.
+	 */
+	private static DistanceKernel loadVectorKernel() {
+		try {
+			return (DistanceKernel)Class.forName("mosais.distribution.VectorDistanceKernel")
+					.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return SCALAR;
+		} catch (LinkageError e) {
+			return SCALAR;
+		}
+	}
+	
+	/**
+	 * @return Number of pixels compared to a candidate at once.
+	 */
+	public abstract int getWidth();
+	
+	/**
+	 * Label a row of pixels with the closest of a list of candidates, the first in the
+	 * list where several are equally close.
+	 * 
+	 * @param candidateX X coordinate of each candidate.
+	 * @param candidateY Y coordinate of each candidate.
+	 * @param ids Label of each candidate.
+	 * @param count Number of candidates, at least 1.
+	 * @param x0 X coordinate of the first pixel of the row.
+	 * @param y Y coordinate of the row.
+	 * @param length Number of pixels in the row.
+	 * @param labels Array to write the labels into.
+	 * @param offset Position in labels of the first pixel.
+	 */
+	public abstract void closestRow(int[] candidateX, int[] candidateY, int[] ids, int count, 
+			int x0, int y, int length, int[] labels, int offset);
+	
+	/**
+	 * Compares one pixel at a time, with squared distances in longs so any area is safe.
+	 */
+	private static final class ScalarKernel extends DistanceKernel {
+		
+		@Override
+		public int getWidth() {
+			return 1;
+		}
+		
+		@Override
+		public void closestRow(int[] candidateX, int[] candidateY, int[] ids, int count, 
+				int x0, int y, int length, int[] labels, int offset) {
+			for (int i = 0; i < length; i++) {
+				int x = x0 + i;
+				int closest = 0;
+				long closestDistance = Long.MAX_VALUE;
+				for (int c = 0; c < count; c++) {
+					long dx = candidateX[c] - x;
+					long dy = candidateY[c] - y;
+					long distance = dx * dx + dy * dy;
+					if (distance < closestDistance) {
+						closest = c;
+						closestDistance = distance;
+					}
+				}
+				labels[offset + i] = ids[closest];
+			}
+		}
+	}
+}
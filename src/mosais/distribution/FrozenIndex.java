@@ -0,0 +1,170 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+/**
+ * A spatial index that can no longer change, made by freezing a distribution once all
+ * of its points are placed. The points are copied into a store of their own and the
+ * index is built over them in one go, so it is balanced and its arrays are trimmed to
+ * the points and nodes it holds. A Delaunay index keeps its triangulation.
+ * 
+ * Every field is set before construction ends and is never written again, and the 
+ * searches write only to their own locals, so any number of threads may query a frozen
+ * index at the same time without locks or copies of their own.
+ *
+ * @author Andrew Trismen
+ */
+public final class FrozenIndex implements SpatialIndex {
+	
+	/** The index searched, never modified once built */
+	private final SpatialIndex index;
+	
+	/**
+	 * Construct a frozen copy of an index.
+	 * 
+	 * @param source Index to copy the points of.
+	 * @param width Width of the area covered by the index.
+	 * @param height Height of the area covered by the index.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf of a tree.
+	 * @param spacing Expected distance between neighbouring points, sizing grid cells.
+	 * @throws IllegalArgumentException if source is null.
+	 */
+	FrozenIndex(SpatialIndex source, int width, int height, int maxPointsPerNode, int spacing) {
+		if (source == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		if (source instanceof DelaunayIndex) {
+			this.index = new DelaunayIndex((DelaunayIndex)source, source.getSites().copy(), 
+					width, height, maxPointsPerNode);
+		} else {
+			this.index = source.getType().create(source.getSites().copy(), width, height, 
+					maxPointsPerNode, spacing);
+		}
+	}
+	
+	/**
+	 * @return Delaunay triangulation of the points, or null if the index is not a 
+	 * Delaunay index or its points all lie on one line.
+	 */
+	DelaunayGraph getGraph() {
+		return index instanceof DelaunayIndex ? ((DelaunayIndex)index).getGraph() : null;
+	}
+	
+	@Override
+	public Type getType() {
+		return index.getType();
+	}
+	
+	/**
+	 * Get the sites of the index. The coordinates are fixed, but site colors may still
+	 * be set, as no search reads them.
+	 * 
+	 * @return The store the points are kept in.
+	 */
+	@Override
+	public SiteStore getSites() {
+		return index.getSites();
+	}
+	
+	@Override
+	public int size() {
+		return index.size();
+	}
+	
+	@Override
+	public int getX(int index) {
+		return this.index.getX(index);
+	}
+	
+	@Override
+	public int getY(int index) {
+		return this.index.getY(index);
+	}
+	
+	@Override
+	public boolean contains(int x, int y) {
+		return index.contains(x, y);
+	}
+	
+	/**
+	 * Points cannot be inserted into a frozen index.
+	 * 
+	 * @throws UnsupportedOperationException always.
+	 */
+	@Override
+	public int insert(int x, int y) {
+		throw new UnsupportedOperationException("Index is frozen.");
+	}
+	
+	/**
+	 * Points cannot be inserted into a frozen index.
+	 * 
+	 * @throws UnsupportedOperationException always.
+	 */
+	@Override
+	public void load(int[] x, int[] y, int count) {
+		throw new UnsupportedOperationException("Index is frozen.");
+	}
+	
+	@Override
+	public long distanceSq(int index, int x, int y) {
+		return this.index.distanceSq(index, x, y);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start) {
+		return index.nearest(x, y, start);
+	}
+	
+	@Override
+	public int nearest(int x, int y) {
+		return index.nearest(x, y);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit) {
+		return index.nearest(x, y, start, limit);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit, double epsilon) {
+		return index.nearest(x, y, start, limit, epsilon);
+	}
+	
+	@Override
+	public int[] kNearest(int x, int y, int k) {
+		return index.kNearest(x, y, k);
+	}
+	
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		return index.withinRadius(x, y, radius);
+	}
+	
+	@Override
+	public int kNearest(int x, int y, int k, int[] out) {
+		return index.kNearest(x, y, k, out);
+	}
+	
+	@Override
+	public boolean anyWithin(int x, int y, int radius) {
+		return index.anyWithin(x, y, radius);
+	}
+}
@@ -0,0 +1,483 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index dividing the area into square cells of equal size, for points spread
+ * roughly evenly with a known spacing. With cells about the size of the spacing, each
+ * cell holds a point or two, and a nearest point search looks at a ring or two of cells
+ * around the location with no tree to walk down.
+ * 
+ * The points of each cell are stored together in compressed rows: one array of offsets
+ * giving where the points of each cell start, and one array of their coordinates, so
+ * the points of neighbouring cells of a row sit next to each other in memory. Points 
+ * inserted since the rows were built are chained per cell until the number of points
+ * doubles, when the rows are rebuilt.
+ *
+ * @author Andrew Trismen
+ */
+public class GridIndex implements SpatialIndex {
+	
+	/** Value of a chain link for no point */
+	private static final int NONE = -1;
+	
+	/** Number of points room is made for when the index is created */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** Width of the area covered */
+	private final int width;
+	
+	/** Height of the area covered */
+	private final int height;
+	
+	/** Width and height of a cell */
+	private final int cellSize;
+	
+	/** Number of columns of cells */
+	private final int columns;
+	
+	/** Number of rows of cells */
+	private final int rows;
+	
+	/** Position in coords and ids of the first built point of each cell, and the end */
+	private int[] offsets;
+	
+	/** X and Y coordinates of the built points, in pairs, cell by cell */
+	private int[] coords;
+	
+	/** Index of each built point, cell by cell */
+	private int[] ids;
+	
+	/** Number of points in the compressed rows */
+	private int builtPoints;
+	
+	/** Last point inserted into each cell since the rows were built, or NONE */
+	private final int[] pendingHead;
+	
+	/** The sites the points are stored in */
+	private final SiteStore sites;
+	
+	/** X coordinate of each point, the array of the site store */
+	private int[] pointX;
+	
+	/** Y coordinate of each point, the array of the site store */
+	private int[] pointY;
+	
+	/** Point inserted into the same cell before each point since the rows were built */
+	private int[] next;
+	
+	/** Number of points in the index */
+	private int points;
+	
+	/**
+	 * Construct an empty index covering an area with its top left corner at 0, 0.
+	 * 
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param cellSize Width and height of a cell, ideally about the spacing of the points.
+	 * @throws IllegalArgumentException if the area is empty or cellSize is less than 1.
+	 */
+	public GridIndex(int width, int height, int cellSize) {
+		this(new SiteStore(), width, height, cellSize);
+	}
+	
+	/**
+	 * Construct an index covering an area with its top left corner at 0, 0, indexing
+	 * the sites of a store. Any sites already in the store are indexed in one go.
+	 * 
+	 * @param sites Store to keep the points in, possibly holding sites already.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param cellSize Width and height of a cell, ideally about the spacing of the points.
+	 * @throws IllegalArgumentException if the area is empty, or a site lies outside it, or cellSize is less than 1.
+	 */
+	public GridIndex(SiteStore sites, int width, int height, int cellSize) {
+		if (width < 1 || height < 1 || cellSize < 1) {
+			throw new IllegalArgumentException("Size and cell size must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.cellSize = cellSize;
+		this.columns = (width + cellSize - 1) / cellSize;
+		this.rows = (height + cellSize - 1) / cellSize;
+		
+		offsets = new int[columns * rows + 1];
+		coords = new int[0];
+		ids = new int[0];
+		pendingHead = new int[columns * rows];
+		Arrays.fill(pendingHead, NONE);
+		this.sites = sites;
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(sites.size(), INITIAL_CAPACITY)];
+		for (int i = 0; i < sites.size(); i++) {
+			if (!contains(pointX[i], pointY[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		if (sites.size() > 0) {
+			points = sites.size();
+			indexSites();
+		}
+	}
+	
+	@Override
+	public Type getType() {
+		return Type.GRID;
+	}
+	
+	@Override
+	public SiteStore getSites() {
+		return sites;
+	}
+	
+	@Override
+	public int size() {
+		return points;
+	}
+	
+	/**
+	 * @return Width and height of a cell.
+	 */
+	public int getCellSize() {
+		return cellSize;
+	}
+	
+	@Override
+	public int getX(int index) {
+		return pointX[index];
+	}
+	
+	@Override
+	public int getY(int index) {
+		return pointY[index];
+	}
+	
+	@Override
+	public boolean contains(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+	
+	@Override
+	public int insert(int x, int y) {
+		if (!contains(x, y)) {
+			throw new IllegalArgumentException("Point lies outside valid area.");
+		}
+		int index = sites.add(x, y);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		if (index == next.length) {
+			next = Arrays.copyOf(next, index * 2);
+		}
+		points++;
+		
+		int cell = (y / cellSize) * columns + x / cellSize;
+		next[index] = pendingHead[cell];
+		pendingHead[cell] = index;
+		if (points >= INITIAL_CAPACITY && points >= 2 * builtPoints) {
+			rebuild();
+		}
+		return index;
+	}
+	
+	@Override
+	public void load(int[] x, int[] y, int count) {
+		if (points > 0) {
+			for (int i = 0; i < count; i++) {
+				insert(x[i], y[i]);
+			}
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			if (!contains(x[i], y[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		sites.addAll(x, y, count);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(count, INITIAL_CAPACITY)];
+		points = count;
+		indexSites();
+	}
+	
+	/**
+	 * Build the compressed rows over every site in the store.
+	 */
+	private void indexSites() {
+		rebuild();
+	}
+	
+	/**
+	 * Build the compressed rows again from all points inserted so far.
+	 */
+	private void rebuild() {
+		Arrays.fill(offsets, 0);
+		for (int i = 0; i < points; i++) {
+			offsets[(pointY[i] / cellSize) * columns + pointX[i] / cellSize + 1]++;
+		}
+		for (int cell = 0; cell < columns * rows; cell++) {
+			offsets[cell + 1] += offsets[cell];
+		}
+		
+		coords = new int[points * 2];
+		ids = new int[points];
+		int[] fill = Arrays.copyOf(offsets, columns * rows);
+		for (int i = 0; i < points; i++) {
+			int slot = fill[(pointY[i] / cellSize) * columns + pointX[i] / cellSize]++;
+			coords[slot * 2] = pointX[i];
+			coords[slot * 2 + 1] = pointY[i];
+			ids[slot] = i;
+		}
+		Arrays.fill(pendingHead, NONE);
+		builtPoints = points;
+	}
+	
+	@Override
+	public long distanceSq(int index, int x, int y) {
+		long dx = pointX[index] - x;
+		long dy = pointY[index] - y;
+		return dx * dx + dy * dy;
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start) {
+		return search(x, y, start, distanceSq(start, x, y), 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y) {
+		return search(x, y, NONE, Long.MAX_VALUE, 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit) {
+		return search(x, y, start, limit, 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit, double epsilon) {
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Error bound cannot be negative.");
+		}
+		return search(x, y, start, limit, (1 + epsilon) * (1 + epsilon));
+	}
+	
+	@Override
+	public int[] kNearest(int x, int y, int k) {
+		int[] out = new int[NeighbourHeap.count(k, points, null)];
+		kNearest(x, y, k, out);
+		return out;
+	}
+	
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		long limit = (long)radius * radius;
+		int[] heap = new int[NeighbourHeap.capacity(points, (long)width * height, limit)];
+		while (heap.length > 0) {
+			int size = gather(x, y, heap, heap.length, limit);
+			if (size < heap.length || size == points) {
+				return Arrays.copyOf(heap, size);
+			}
+			//the heap filled up so closer points may have pushed out others in range
+			heap = new int[NeighbourHeap.grow(heap, points, limit, pointX, pointY, x, y)];
+		}
+		return heap;
+	}
+	
+	@Override
+	public int kNearest(int x, int y, int k, int[] out) {
+		k = NeighbourHeap.count(k, points, out);
+		if (k == 0) {
+			return 0;
+		}
+		int size = gather(x, y, out, k, Long.MAX_VALUE);
+		NeighbourHeap.sort(out, size, pointX, pointY, x, y);
+		return size;
+	}
+	
+	@Override
+	public boolean anyWithin(int x, int y, int radius) {
+		if (radius < 1) {
+			return false;
+		}
+		long limit = (long)radius * radius;
+		int left = Math.max((x - radius + 1) / cellSize, 0);
+		int right = Math.min((x + radius - 1) / cellSize, columns - 1);
+		int top = Math.max((y - radius + 1) / cellSize, 0);
+		int bottom = Math.min((y + radius - 1) / cellSize, rows - 1);
+		for (int iy = top; iy <= bottom; iy++) {
+			for (int ix = left; ix <= right; ix++) {
+				int cell = iy * columns + ix;
+				for (int slot = offsets[cell]; slot < offsets[cell + 1]; slot++) {
+					long px = coords[slot * 2] - x;
+					long py = coords[slot * 2 + 1] - y;
+					if (px * px + py * py < limit) {
+						return true;
+					}
+				}
+				for (int point = pendingHead[cell]; point != NONE; point = next[point]) {
+					if (distanceSq(point, x, y) < limit) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Search the cells in rings of growing size around the cell holding a location, 
+	 * stopping at the first ring lying further away than the closest point found. Cells
+	 * further away than the closest point are skipped.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param closest Index of the closest point found so far.
+	 * @param closestDistance Squared distance points must be closer than.
+	 * @param factor Square of how many times further than the closest point the point
+	 * found may be, 1 to find the closest.
+	 * @return Index of the closest point found.
+	 */
+	private int search(int x, int y, int closest, long closestDistance, double factor) {
+		int cx = Math.min(Math.max(x / cellSize, 0), columns - 1);
+		int cy = Math.min(Math.max(y / cellSize, 0), rows - 1);
+		int lastRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+		
+		for (int ring = 0; ring <= lastRing; ring++) {
+			if (ring > 0) {
+				long gap = ringGap(x, y, cx, cy, ring);
+				if (gap * gap * factor >= closestDistance) {
+					break;
+				}
+			}
+			
+			int top = cy - ring;
+			int bottom = cy + ring;
+			for (int iy = Math.max(top, 0); iy <= Math.min(bottom, rows - 1); iy++) {
+				//the top and bottom rows of the ring are whole, the rows between are two cells
+				int step = iy == top || iy == bottom ? 1 : 2 * ring;
+				for (int ix = cx - ring; ix <= cx + ring; ix += step) {
+					if (ix < 0 || ix >= columns || cellDistanceSq(x, y, ix, iy) * factor >= closestDistance) {
+						continue;
+					}
+					
+					int cell = iy * columns + ix;
+					for (int slot = offsets[cell]; slot < offsets[cell + 1]; slot++) {
+						long px = coords[slot * 2] - x;
+						long py = coords[slot * 2 + 1] - y;
+						long distance = px * px + py * py;
+						if (distance < closestDistance) {
+							closestDistance = distance;
+							closest = ids[slot];
+						}
+					}
+					for (int point = pendingHead[cell]; point != NONE; point = next[point]) {
+						long distance = distanceSq(point, x, y);
+						if (distance < closestDistance) {
+							closestDistance = distance;
+							closest = point;
+						}
+					}
+				}
+			}
+		}
+		return closest;
+	}
+	
+	/**
+	 * Keep the closest points in a heap, searching the cells in rings of growing size 
+	 * in the same way as search.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param heap Heap to keep the points in.
+	 * @param k Most points to keep.
+	 * @param limit Squared distance points must be closer than to be kept.
+	 * @return Number of points kept.
+	 */
+	private int gather(int x, int y, int[] heap, int k, long limit) {
+		int cx = Math.min(Math.max(x / cellSize, 0), columns - 1);
+		int cy = Math.min(Math.max(y / cellSize, 0), rows - 1);
+		int lastRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+		int size = 0;
+		
+		for (int ring = 0; ring <= lastRing; ring++) {
+			if (ring > 0) {
+				long gap = ringGap(x, y, cx, cy, ring);
+				if (gap * gap >= NeighbourHeap.bound(heap, size, k, limit, pointX, pointY, x, y)) {
+					break;
+				}
+			}
+			
+			int top = cy - ring;
+			int bottom = cy + ring;
+			for (int iy = Math.max(top, 0); iy <= Math.min(bottom, rows - 1); iy++) {
+				int step = iy == top || iy == bottom ? 1 : 2 * ring;
+				for (int ix = cx - ring; ix <= cx + ring; ix += step) {
+					if (ix < 0 || ix >= columns || cellDistanceSq(x, y, ix, iy) 
+							>= NeighbourHeap.bound(heap, size, k, limit, pointX, pointY, x, y)) {
+						continue;
+					}
+					
+					int cell = iy * columns + ix;
+					for (int slot = offsets[cell]; slot < offsets[cell + 1]; slot++) {
+						long px = coords[slot * 2] - x;
+						long py = coords[slot * 2 + 1] - y;
+						size = NeighbourHeap.offer(heap, size, k, limit, ids[slot], px * px + py * py, pointX, pointY, x, y);
+					}
+					for (int point = pendingHead[cell]; point != NONE; point = next[point]) {
+						size = NeighbourHeap.offer(heap, size, k, limit, point, distanceSq(point, x, y), pointX, pointY, x, y);
+					}
+				}
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @param x X coordinate of a location.
+	 * @param y Y coordinate of a location.
+	 * @param cx Column of the cell holding the location.
+	 * @param cy Row of the cell holding the location.
+	 * @param ring Ring of cells around that cell, from 1.
+	 * @return Distance from the location to the nearest pixel outside the cells of the 
+	 * rings before ring.
+	 */
+	private long ringGap(int x, int y, int cx, int cy, int ring) {
+		return Math.min(Math.min(x - (cx - ring + 1) * cellSize + 1, (cx + ring) * cellSize - x), 
+				Math.min(y - (cy - ring + 1) * cellSize + 1, (cy + ring) * cellSize - y));
+	}
+	
+	/**
+	 * @param x X coordinate of a location.
+	 * @param y Y coordinate of a location.
+	 * @param ix Column of a cell.
+	 * @param iy Row of a cell.
+	 * @return Squared distance from the location to the nearest pixel of the cell.
+	 */
+	private long cellDistanceSq(int x, int y, int ix, int iy) {
+		long dx = Math.max(0, Math.max(ix * cellSize - x, x - ((ix + 1) * cellSize - 1)));
+		long dy = Math.max(0, Math.max(iy * cellSize - y, y - ((iy + 1) * cellSize - 1)));
+		return dx * dx + dy * dy;
+	}
+}
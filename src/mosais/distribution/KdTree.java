@@ -0,0 +1,614 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.util.Arrays;
+
+/**
+ * A 2-d tree of points with integer coordinates, kept in flat int arrays like 
+ * PointQuadtree. Each inner node splits its points at the median along the wider side 
+ * of their bounds, so both halves hold the same number of points however the points 
+ * are clumped, and the depth of the tree stays close to log2 of the number of leaves. 
+ * 
+ * Points inserted after the tree was built are added to the leaf covering them, and a
+ * leaf that becomes too full is split at its own median. The whole tree is rebuilt
+ * balanced each time the number of points doubles.
+ *
+ * @author Andrew Trismen
+ */
+public class KdTree implements SpatialIndex {
+	
+	/** Value of axis for an inner node split on x */
+	private static final int SPLIT_X = 0;
+	
+	/** Value of axis for an inner node split on y */
+	private static final int SPLIT_Y = 1;
+	
+	/** Value of axis for a leaf */
+	private static final int LEAF = 2;
+	
+	/** Value of axis for a leaf too full to split, because all its points are the same */
+	private static final int SAME_LEAF = 3;
+	
+	/** Value of next for the last point of a leaf */
+	private static final int NONE = -1;
+	
+	/** Number of nodes or points room is made for when the tree is created */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** Width of the area covered */
+	private final int width;
+	
+	/** Height of the area covered */
+	private final int height;
+	
+	/** Maximum number of points to store in a leaf before splitting it */
+	private final int maxPointsPerNode;
+	
+	/** Axis each inner node is split on, or the kind of leaf */
+	private int[] axis;
+	
+	/** Coordinate each inner node is split at, smaller coordinates go to the low child */
+	private int[] split;
+	
+	/** Low child of each inner node */
+	private int[] low;
+	
+	/** High child of each inner node */
+	private int[] high;
+	
+	/** First point of each leaf, or NONE */
+	private int[] head;
+	
+	/** Number of points in each leaf */
+	private int[] count;
+	
+	/** Number of nodes in the tree */
+	private int nodes;
+	
+	/** The sites the points are stored in */
+	private final SiteStore sites;
+	
+	/** X coordinate of each point, the array of the site store */
+	private int[] pointX;
+	
+	/** Y coordinate of each point, the array of the site store */
+	private int[] pointY;
+	
+	/** Next point in the same leaf as each point, or NONE */
+	private int[] next;
+	
+	/** Number of points in the tree */
+	private int points;
+	
+	/** Number of points when the tree was last rebuilt */
+	private int builtPoints;
+	
+	/**
+	 * Construct an empty tree covering an area with its top left corner at 0, 0.
+	 * 
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf before splitting it.
+	 * @throws IllegalArgumentException if the area is empty or maxPointsPerNode is less than 1.
+	 */
+	public KdTree(int width, int height, int maxPointsPerNode) {
+		this(new SiteStore(), width, height, maxPointsPerNode);
+	}
+	
+	/**
+	 * Construct a tree covering an area with its top left corner at 0, 0, indexing
+	 * the sites of a store. Any sites already in the store are indexed in one go.
+	 * 
+	 * @param sites Store to keep the points in, possibly holding sites already.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf before splitting it.
+	 * @throws IllegalArgumentException if the area is empty, or a site lies outside it, or maxPointsPerNode is less than 1.
+	 */
+	public KdTree(SiteStore sites, int width, int height, int maxPointsPerNode) {
+		if (width < 1 || height < 1 || maxPointsPerNode < 1) {
+			throw new IllegalArgumentException("Size and node capacity must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.maxPointsPerNode = maxPointsPerNode;
+		
+		axis = new int[INITIAL_CAPACITY];
+		split = new int[INITIAL_CAPACITY];
+		low = new int[INITIAL_CAPACITY];
+		high = new int[INITIAL_CAPACITY];
+		head = new int[INITIAL_CAPACITY];
+		count = new int[INITIAL_CAPACITY];
+		this.sites = sites;
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(sites.size(), INITIAL_CAPACITY)];
+		addLeaf();
+		for (int i = 0; i < sites.size(); i++) {
+			if (!contains(pointX[i], pointY[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		if (sites.size() > 0) {
+			points = sites.size();
+			indexSites();
+		}
+	}
+	
+	@Override
+	public Type getType() {
+		return Type.KD_TREE;
+	}
+	
+	@Override
+	public SiteStore getSites() {
+		return sites;
+	}
+	
+	@Override
+	public int size() {
+		return points;
+	}
+	
+	/**
+	 * @return Number of nodes in the tree, inner nodes and leaves.
+	 */
+	public int getNodeCount() {
+		return nodes;
+	}
+	
+	@Override
+	public int getX(int index) {
+		return pointX[index];
+	}
+	
+	@Override
+	public int getY(int index) {
+		return pointY[index];
+	}
+	
+	@Override
+	public boolean contains(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+	
+	@Override
+	public int insert(int x, int y) {
+		if (!contains(x, y)) {
+			throw new IllegalArgumentException("Point lies outside valid area.");
+		}
+		int index = sites.add(x, y);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		if (index == next.length) {
+			next = Arrays.copyOf(next, index * 2);
+		}
+		points++;
+		
+		if (points > maxPointsPerNode && points >= 2 * builtPoints) {
+			rebuild();
+			return index;
+		}
+		
+		int node = 0;
+		while (axis[node] < LEAF) {
+			node = (axis[node] == SPLIT_X ? x : y) < split[node] ? low[node] : high[node];
+		}
+		if (axis[node] == SAME_LEAF && (x != pointX[head[node]] || y != pointY[head[node]])) {
+			axis[node] = LEAF;
+		}
+		next[index] = head[node];
+		head[node] = index;
+		count[node]++;
+		if (count[node] > maxPointsPerNode && axis[node] == LEAF) {
+			int[] leafPoints = new int[count[node]];
+			int i = 0;
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				leafPoints[i++] = point;
+			}
+			build(leafPoints, 0, leafPoints.length, node);
+		}
+		return index;
+	}
+	
+	@Override
+	public void load(int[] x, int[] y, int count) {
+		if (points > 0) {
+			for (int i = 0; i < count; i++) {
+				insert(x[i], y[i]);
+			}
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			if (!contains(x[i], y[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		sites.addAll(x, y, count);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(count, INITIAL_CAPACITY)];
+		points = count;
+		indexSites();
+	}
+	
+	/**
+	 * Build the whole tree balanced over every site in the store. The node arrays are
+	 * trimmed to the nodes built, as a tree built in one go is seldom inserted into.
+	 */
+	private void indexSites() {
+		rebuild();
+		axis = Arrays.copyOf(axis, nodes);
+		split = Arrays.copyOf(split, nodes);
+		low = Arrays.copyOf(low, nodes);
+		high = Arrays.copyOf(high, nodes);
+		head = Arrays.copyOf(head, nodes);
+		count = Arrays.copyOf(count, nodes);
+	}
+	
+	/**
+	 * Rebuild the whole tree balanced from all points inserted so far.
+	 */
+	private void rebuild() {
+		int[] all = new int[points];
+		for (int i = 0; i < points; i++) {
+			all[i] = i;
+		}
+		nodes = 0;
+		build(all, 0, points, addLeaf());
+		builtPoints = points;
+	}
+	
+	/**
+	 * Make a node into a balanced subtree holding a range of points, splitting it at the
+	 * median along the wider side of the bounds of the points until every leaf is small 
+	 * enough. Points are reordered within the range.
+	 * 
+	 * @param order Indexes of points.
+	 * @param from First position in order of the range.
+	 * @param to Position in order after the range.
+	 * @param node Index of the node to build into.
+	 */
+	private void build(int[] order, int from, int to, int node) {
+		int x0 = Integer.MAX_VALUE;
+		int y0 = Integer.MAX_VALUE;
+		int x1 = Integer.MIN_VALUE;
+		int y1 = Integer.MIN_VALUE;
+		for (int i = from; i < to; i++) {
+			int point = order[i];
+			x0 = Math.min(x0, pointX[point]);
+			y0 = Math.min(y0, pointY[point]);
+			x1 = Math.max(x1, pointX[point]);
+			y1 = Math.max(y1, pointY[point]);
+		}
+		
+		if (to - from <= maxPointsPerNode || (x0 == x1 && y0 == y1)) {
+			axis[node] = to - from <= maxPointsPerNode ? LEAF : SAME_LEAF;
+			head[node] = NONE;
+			count[node] = to - from;
+			for (int i = from; i < to; i++) {
+				next[order[i]] = head[node];
+				head[node] = order[i];
+			}
+			return;
+		}
+		
+		int nodeAxis = x1 - x0 >= y1 - y0 ? SPLIT_X : SPLIT_Y;
+		int[] coords = nodeAxis == SPLIT_X ? pointX : pointY;
+		int median = select(order, from, to, (from + to) >>> 1, coords);
+		int middle = partition(order, from, to, coords, median);
+		if (middle == from) {
+			//the median is the smallest value, so split just above it instead
+			int above = Integer.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				int c = coords[order[i]];
+				if (c > median && c < above) {
+					above = c;
+				}
+			}
+			median = above;
+			middle = partition(order, from, to, coords, median);
+		}
+		
+		int lowChild = addLeaf();
+		int highChild = addLeaf();
+		axis[node] = nodeAxis;
+		split[node] = median;
+		low[node] = lowChild;
+		high[node] = highChild;
+		build(order, from, middle, lowChild);
+		build(order, middle, to, highChild);
+	}
+	
+	/**
+	 * Find the value at a rank among the coordinates of a range of points, partly 
+	 * ordering the range on the way.
+	 * 
+	 * @param order Indexes of points.
+	 * @param from First position of the range.
+	 * @param to Position after the range.
+	 * @param rank Position the value would have if the range was sorted.
+	 * @param coords Coordinates to compare.
+	 * @return The coordinate at the rank.
+	 */
+	private static int select(int[] order, int from, int to, int rank, int[] coords) {
+		int left = from;
+		int right = to - 1;
+		while (left < right) {
+			int pivot = coords[order[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (coords[order[i]] < pivot) {
+					i++;
+				}
+				while (coords[order[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (rank <= j) {
+				right = j;
+			} else if (rank >= i) {
+				left = i;
+			} else {
+				break;
+			}
+		}
+		return coords[order[rank]];
+	}
+	
+	/**
+	 * Move the points of a range with coordinates below a value to the front of the range.
+	 * 
+	 * @param order Indexes of points.
+	 * @param from First position of the range.
+	 * @param to Position after the range.
+	 * @param coords Coordinates to compare.
+	 * @param value Value to compare with.
+	 * @return Position after the last point below the value.
+	 */
+	private static int partition(int[] order, int from, int to, int[] coords, int value) {
+		int middle = from;
+		for (int i = from; i < to; i++) {
+			if (coords[order[i]] < value) {
+				int swap = order[i];
+				order[i] = order[middle];
+				order[middle] = swap;
+				middle++;
+			}
+		}
+		return middle;
+	}
+	
+	/**
+	 * Add an empty leaf to the node arrays, growing them if needed.
+	 * 
+	 * @return Index of the new leaf.
+	 */
+	private int addLeaf() {
+		if (nodes == axis.length) {
+			int capacity = nodes * 2;
+			axis = Arrays.copyOf(axis, capacity);
+			split = Arrays.copyOf(split, capacity);
+			low = Arrays.copyOf(low, capacity);
+			high = Arrays.copyOf(high, capacity);
+			head = Arrays.copyOf(head, capacity);
+			count = Arrays.copyOf(count, capacity);
+		}
+		int node = nodes++;
+		axis[node] = LEAF;
+		head[node] = NONE;
+		count[node] = 0;
+		return node;
+	}
+	
+	@Override
+	public long distanceSq(int index, int x, int y) {
+		long dx = pointX[index] - x;
+		long dy = pointY[index] - y;
+		return dx * dx + dy * dy;
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start) {
+		return search(x, y, 0, start, distanceSq(start, x, y), 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y) {
+		return search(x, y, 0, NONE, Long.MAX_VALUE, 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit) {
+		return search(x, y, 0, start, limit, 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit, double epsilon) {
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Error bound cannot be negative.");
+		}
+		return search(x, y, 0, start, limit, (1 + epsilon) * (1 + epsilon));
+	}
+	
+	/**
+	 * Search a node for the point closest to a location recursively. The side of the
+	 * split holding the location is searched first, and the other side only if the split
+	 * line is closer than the closest point found.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param closest Index of the closest point found so far.
+	 * @param closestDistance Squared distance from the location to the closest point.
+	 * @param factor Square of how many times further than the closest point the point
+	 * found may be, 1 to find the closest.
+	 * @return Index of the closest point found.
+	 */
+	private int search(int x, int y, int node, int closest, long closestDistance, double factor) {
+		int nodeAxis = axis[node];
+		if (nodeAxis >= LEAF) {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				long distance = distanceSq(point, x, y);
+				if (distance < closestDistance) {
+					closestDistance = distance;
+					closest = point;
+				}
+			}
+			return closest;
+		}
+		
+		//a point on the far side is at least this far from the location along the axis
+		long gap = (nodeAxis == SPLIT_X ? x : y) - split[node];
+		int near = low[node];
+		int far = high[node];
+		if (gap >= 0) {
+			near = high[node];
+			far = low[node];
+			gap++;
+		}
+		
+		int found = search(x, y, near, closest, closestDistance, factor);
+		if (found != closest) {
+			closest = found;
+			closestDistance = distanceSq(closest, x, y);
+		}
+		if (gap * gap * factor < closestDistance) {
+			closest = search(x, y, far, closest, closestDistance, factor);
+		}
+		return closest;
+	}
+	
+	@Override
+	public int[] kNearest(int x, int y, int k) {
+		int[] out = new int[NeighbourHeap.count(k, points, null)];
+		kNearest(x, y, k, out);
+		return out;
+	}
+	
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		long limit = (long)radius * radius;
+		int[] heap = new int[NeighbourHeap.capacity(points, (long)width * height, limit)];
+		while (heap.length > 0) {
+			int size = gather(x, y, 0, heap, 0, heap.length, limit);
+			if (size < heap.length || size == points) {
+				return Arrays.copyOf(heap, size);
+			}
+			//the heap filled up so closer points may have pushed out others in range
+			heap = new int[NeighbourHeap.grow(heap, points, limit, pointX, pointY, x, y)];
+		}
+		return heap;
+	}
+	
+	@Override
+	public int kNearest(int x, int y, int k, int[] out) {
+		k = NeighbourHeap.count(k, points, out);
+		if (k == 0) {
+			return 0;
+		}
+		int size = gather(x, y, 0, out, 0, k, Long.MAX_VALUE);
+		NeighbourHeap.sort(out, size, pointX, pointY, x, y);
+		return size;
+	}
+	
+	@Override
+	public boolean anyWithin(int x, int y, int radius) {
+		return anyWithin(x, y, 0, (long)radius * radius);
+	}
+	
+	/**
+	 * Keep every point of a subtree closer than those kept so far, recursively, visiting
+	 * the side of the split holding the location first.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param heap Heap of the points kept.
+	 * @param size Number of points kept.
+	 * @param k Most points to keep.
+	 * @param limit Squared distance points must be closer than to be kept.
+	 * @return Number of points kept afterwards.
+	 */
+	private int gather(int x, int y, int node, int[] heap, int size, int k, long limit) {
+		int nodeAxis = axis[node];
+		if (nodeAxis >= LEAF) {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				size = NeighbourHeap.offer(heap, size, k, limit, point, distanceSq(point, x, y), pointX, pointY, x, y);
+			}
+			return size;
+		}
+		
+		long gap = (nodeAxis == SPLIT_X ? x : y) - split[node];
+		int near = low[node];
+		int far = high[node];
+		if (gap >= 0) {
+			near = high[node];
+			far = low[node];
+			gap++;
+		}
+		size = gather(x, y, near, heap, size, k, limit);
+		if (gap * gap < NeighbourHeap.bound(heap, size, k, limit, pointX, pointY, x, y)) {
+			size = gather(x, y, far, heap, size, k, limit);
+		}
+		return size;
+	}
+	
+	/**
+	 * Check if any point of a subtree is closer to a location than a limit, stopping at
+	 * the first found, and visiting the side of the split holding the location first.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param limit Squared distance a point must be closer than.
+	 * @return True if a point is closer than limit, false otherwise.
+	 */
+	private boolean anyWithin(int x, int y, int node, long limit) {
+		int nodeAxis = axis[node];
+		if (nodeAxis >= LEAF) {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				if (distanceSq(point, x, y) < limit) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		long gap = (nodeAxis == SPLIT_X ? x : y) - split[node];
+		int near = low[node];
+		int far = high[node];
+		if (gap >= 0) {
+			near = high[node];
+			far = low[node];
+			gap++;
+		}
+		return anyWithin(x, y, near, limit) || (gap * gap < limit && anyWithin(x, y, far, limit));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.util.Arrays;
+
+/**
+ * Orders points along a Z-order (Morton) curve, which visits the area in nested 
+ * quarters, so points close together in the order are close together in the plane.
+ * Each point gets a key made by interleaving the bits of its coordinates, and the keys
+ * are sorted with a radix sort, which takes the same few passes over the points 
+ * whatever their order.
+ *
+ * @author Andrew Trismen
+ */
+class MortonOrder {
+	
+	/** Number of bits of the key sorted on in each pass */
+	private static final int RADIX_BITS = 8;
+	
+	/** Coordinates must be below this for both to fit in a 32 bit key */
+	private static final int COORDINATE_LIMIT = 1 << 16;
+	
+	/**
+	 * Reorder points along the Z-order curve. Points with coordinates too large for a 
+	 * 32 bit key are left in the order given.
+	 * 
+	 * @param x X coordinates of the points, reordered in place.
+	 * @param y Y coordinates of the points, reordered in place.
+	 * @param count Number of points.
+	 */
+	static void sort(int[] x, int[] y, int count) {
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			bits |= x[i] | y[i];
+		}
+		if (bits < 0 || bits >= COORDINATE_LIMIT) {
+			return;
+		}
+		
+		//the key in the high half and the position of the point in the low half
+		long[] keyed = new long[count];
+		for (int i = 0; i < count; i++) {
+			keyed[i] = ((long)key(x[i], y[i]) << 32) | i;
+		}
+		
+		//only as many passes as the largest key needs, least significant digit first
+		int keyBits = 2 * (32 - Integer.numberOfLeadingZeros(bits));
+		long[] scratch = new long[count];
+		int[] counts = new int[1 << RADIX_BITS];
+		for (int shift = 32; shift < 32 + keyBits; shift += RADIX_BITS) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < count; i++) {
+				counts[(int)(keyed[i] >>> shift) & ((1 << RADIX_BITS) - 1)]++;
+			}
+			int total = 0;
+			for (int digit = 0; digit < counts.length; digit++) {
+				int digitCount = counts[digit];
+				counts[digit] = total;
+				total += digitCount;
+			}
+			for (int i = 0; i < count; i++) {
+				scratch[counts[(int)(keyed[i] >>> shift) & ((1 << RADIX_BITS) - 1)]++] = keyed[i];
+			}
+			long[] swap = keyed;
+			keyed = scratch;
+			scratch = swap;
+		}
+		
+		int[] sortedX = new int[count];
+		int[] sortedY = new int[count];
+		for (int i = 0; i < count; i++) {
+			int from = (int)keyed[i];
+			sortedX[i] = x[from];
+			sortedY[i] = y[from];
+		}
+		System.arraycopy(sortedX, 0, x, 0, count);
+		System.arraycopy(sortedY, 0, y, 0, count);
+	}
+	
+	/**
+	 * Interleave the bits of two coordinates, x in the even bits and y in the odd bits.
+	 * 
+	 * @param x X coordinate, below 65536.
+	 * @param y Y coordinate, below 65536.
+	 * @return The Morton key of the location.
+	 */
+	static int key(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+	
+	/**
+	 * Spread the low 16 bits of a value out to the even bits.
+	 * 
+	 * @param value Value below 65536.
+	 * @return The value with a zero bit inserted above each bit.
+	 */
+	private static int spread(int value) {
+		value = (value | (value << 8)) & 0x00FF00FF;
+		value = (value | (value << 4)) & 0x0F0F0F0F;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+}
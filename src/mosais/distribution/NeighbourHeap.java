@@ -0,0 +1,238 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+/**
+ * A bounded max-heap of point indexes kept in an array supplied by the caller, for 
+ * finding the k points closest to a location without allocating. The root is the 
+ * furthest point kept, so a closer point replaces it once the heap is full. Points are
+ * only kept if they are closer than a limit, so the same heap also finds every point 
+ * within a radius. Distances are worked out from the point coordinates when needed 
+ * rather than stored.
+ *
+ * @author Andrew Trismen
+ */
+final class NeighbourHeap {
+	
+	/**
+	 * Not to be constructed, all methods are static.
+	 */
+	private NeighbourHeap() {
+	}
+	
+	/** Room left in the first heap tried for every point within a radius beyond the expected number */
+	private static final int RADIUS_SLACK = 16;
+	
+	/**
+	 * Check the arguments of a search for the k points closest to a location.
+	 * 
+	 * @param k Number of points to find.
+	 * @param points Number of points in the index.
+	 * @param out Array to put the points found in, or null to check only k.
+	 * @return Number of points that will be found, the smaller of k and points.
+	 * @throws IllegalArgumentException if k is less than 1 or out is too short.
+	 */
+	static int count(int k, int points, int[] out) {
+		if (k < 1) {
+			throw new IllegalArgumentException("Number of points must be positive.");
+		}
+		k = Math.min(k, points);
+		if (out != null && out.length < k) {
+			throw new IllegalArgumentException("Output array is too short.");
+		}
+		return k;
+	}
+	
+	/**
+	 * Get the squared distance a point must be closer than to be kept.
+	 * 
+	 * @param heap Indexes of the points kept.
+	 * @param size Number of points kept.
+	 * @param k Most points to keep.
+	 * @param limit Squared distance points must be closer than to be kept at all.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Distance to the furthest point kept if the heap is full, otherwise limit.
+	 */
+	static long bound(int[] heap, int size, int k, long limit, int[] pointX, int[] pointY, int x, int y) {
+		return size < k ? limit : distanceSq(heap[0], pointX, pointY, x, y);
+	}
+	
+	/**
+	 * Keep a point closer than the limit if the heap has room for it or it is closer than
+	 * the furthest point kept, which it then replaces.
+	 * 
+	 * @param heap Indexes of the points kept.
+	 * @param size Number of points kept.
+	 * @param k Most points to keep.
+	 * @param limit Squared distance points must be closer than to be kept at all.
+	 * @param point Index of the point.
+	 * @param distance Squared distance from the point to the location.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Number of points kept afterwards.
+	 */
+	static int offer(int[] heap, int size, int k, long limit, int point, long distance, 
+			int[] pointX, int[] pointY, int x, int y) {
+		if (distance >= limit) {
+			return size;
+		}
+		if (size < k) {
+			//points are only put in heap order once there are k of them, which a search
+			//for every point within a radius may never reach
+			heap[size++] = point;
+			if (size == k) {
+				heapify(heap, size, pointX, pointY, x, y);
+			}
+			return size;
+		}
+		if (distance >= distanceSq(heap[0], pointX, pointY, x, y)) {
+			return size;
+		}
+		siftDown(heap, 0, size, point, distance, pointX, pointY, x, y);
+		return size;
+	}
+	
+	/**
+	 * Choose the size of the first heap to try when searching for every point within a
+	 * radius, from how many points the radius would hold if they were spread evenly.
+	 * 
+	 * @param points Number of points in the index.
+	 * @param area Area the points are spread over.
+	 * @param limit Squared distance points must be closer than.
+	 * @return Size of the heap to try, at most points.
+	 */
+	static int capacity(int points, long area, long limit) {
+		double expected = points * Math.PI * limit / Math.max(area, 1);
+		return (int)Math.min(points, (long)(expected * 1.25) + RADIUS_SLACK);
+	}
+	
+	/**
+	 * Choose a larger heap to search again with after a search for every point within a
+	 * radius filled the heap. The points kept are the closest, so how far away the 
+	 * furthest of them lies gives an estimate of how many points the radius holds.
+	 * 
+	 * @param heap Full heap of the points kept.
+	 * @param points Number of points in the index.
+	 * @param limit Squared distance points must be closer than.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Size of the next heap to try, at least twice as large and at most points.
+	 */
+	static int grow(int[] heap, int points, long limit, int[] pointX, int[] pointY, int x, int y) {
+		long furthest = Math.max(distanceSq(heap[0], pointX, pointY, x, y), 1);
+		double estimate = heap.length * ((double)limit / furthest) * 1.25;
+		return (int)Math.min(points, Math.max(heap.length * 2L, (long)estimate));
+	}
+	
+	/**
+	 * Sort the points kept closest first, which breaks up the heap. The points need not
+	 * be in heap order, as they are not until the heap is full.
+	 * 
+	 * @param heap Indexes of the points kept.
+	 * @param size Number of points kept.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 */
+	static void sort(int[] heap, int size, int[] pointX, int[] pointY, int x, int y) {
+		heapify(heap, size, pointX, pointY, x, y);
+		for (int end = size - 1; end > 0; end--) {
+			int last = heap[end];
+			heap[end] = heap[0];
+			siftDown(heap, 0, end, last, distanceSq(last, pointX, pointY, x, y), pointX, pointY, x, y);
+		}
+	}
+	
+	/**
+	 * Put points in heap order, furthest at the root.
+	 * 
+	 * @param heap Indexes of the points kept.
+	 * @param size Number of points kept.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 */
+	private static void heapify(int[] heap, int size, int[] pointX, int[] pointY, int x, int y) {
+		for (int position = size / 2 - 1; position >= 0; position--) {
+			int point = heap[position];
+			siftDown(heap, position, size, point, distanceSq(point, pointX, pointY, x, y), pointX, pointY, x, y);
+		}
+	}
+	
+	/**
+	 * Place a point at a position of the heap, moving it down past any further children.
+	 * 
+	 * @param heap Indexes of the points kept.
+	 * @param position Position to place the point at.
+	 * @param size Number of points in the heap.
+	 * @param point Index of the point.
+	 * @param distance Squared distance from the point to the location.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 */
+	private static void siftDown(int[] heap, int position, int size, int point, long distance, 
+			int[] pointX, int[] pointY, int x, int y) {
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= size) {
+				break;
+			}
+			long childDistance = distanceSq(heap[child], pointX, pointY, x, y);
+			if (child + 1 < size) {
+				long rightDistance = distanceSq(heap[child + 1], pointX, pointY, x, y);
+				if (rightDistance > childDistance) {
+					child++;
+					childDistance = rightDistance;
+				}
+			}
+			if (childDistance <= distance) {
+				break;
+			}
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = point;
+	}
+	
+	/**
+	 * @param point Index of a point.
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param x X coordinate of a location.
+	 * @param y Y coordinate of a location.
+	 * @return Squared distance from the point to the location.
+	 */
+	private static long distanceSq(int point, int[] pointX, int[] pointY, int x, int y) {
+		long dx = pointX[point] - x;
+		long dy = pointY[point] - y;
+		return dx * dx + dy * dy;
+	}
+}
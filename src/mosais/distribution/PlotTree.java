@@ -21,26 +21,25 @@ package mosais.distribution;
 
 import java.awt.Point;
 import java.util.*;
-
-import mosais.distribution.Quadtree.Quadrant;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * A quadtree backed distribution of points in a two dimensional plane. 
+ * A distribution of points in a two dimensional plane, stored in a spatial index. 
  *
  * @author Andrew Trismen
  */
 public abstract class PlotTree {
 	
-	/** Maximum number of points to store in a quadtree node */
+	/** Maximum number of points to store in a leaf of the index */
 	public static final int MAX_POINTS_PER_NODE = 10;
 	
 	/** Number of points to generate for the plot */
 	private int numPoints;
 	
-	/** The root of the quadtree */
-	protected Quadtree<Point> root;
+	/** The spatial index storing the points */
+	protected SpatialIndex index;
 	
-	/** Parallel List store of points added to tree, to simplify passing data collection */
+	/** View of the points in the tree as a List, to simplify passing data collection */
 	private List<Point> pointList;
 	
 	/** Width of the plot */
@@ -49,12 +48,41 @@ public abstract class PlotTree {
 	/** Height of the plot */
 	private int plotHeight;
 	
+	/** Expected distance between neighbouring points, used to size grid cells */
+	private int spacing;
+	
+	/** Kernel comparing pixels against the candidate points of a tile */
+	private DistanceKernel kernel;
+	
+	/** Error bound of closest point searches, 0 to find the closest point exactly */
+	private double epsilon;
+	
+	/** Voronoi diagram of the points, or null if it has not been built */
+	private VoronoiDiagram voronoi;
+	
+	/** Seed of the random numbers placing the points, used only if seeded */
+	private long seed;
+	
+	/** Whether the points are placed from a set seed rather than a fresh one each time */
+	private boolean seeded;
+	
 	
 	/** 
 	 * Generate the distribution of points. 
 	 */
 	public abstract void createDistribution();
 	
+	/**
+	 * Generate the distribution of points, on the threads of a pool where the work can
+	 * be split up. A distribution gives the same points whatever the pool, and one that
+	 * cannot be split is generated on the calling thread.
+	 * 
+	 * @param pool Pool to generate in, or null to generate on the calling thread.
+	 */
+	public void createDistribution(ForkJoinPool pool) {
+		createDistribution();
+	}
+	
 	/**
 	 * Construct a new distribution tree with the given number of points and dimensions.
 	 * 
@@ -63,13 +91,80 @@ public abstract class PlotTree {
 	 * @param height Height of the area in which to place points.
 	 */
 	public PlotTree(int numPoints, int width, int height) {
+		this(numPoints, width, height, SpatialIndex.Type.QUADTREE);
+	}
+	
+	/**
+	 * Construct a new distribution tree with the given number of points and dimensions, 
+	 * storing the points in the given type of spatial index.
+	 * 
+	 * @param numPoints Number of points to generate for the plot.
+	 * @param width Width of the area in which to place points.
+	 * @param height Height of the area in which to place points.
+	 * @param indexType Type of spatial index to store the points in.
+	 * @throws IllegalArgumentException if indexType is null.
+	 */
+	public PlotTree(int numPoints, int width, int height, SpatialIndex.Type indexType) {
+		this(numPoints, width, height, indexType, 
+				(int)Math.sqrt((double)width * height / Math.max(numPoints, 1)));
+	}
+	
+	/**
+	 * Construct a new distribution tree with the given number of points, dimensions and 
+	 * expected spacing between points, storing the points in the given type of index.
+	 * 
+	 * @param numPoints Number of points to generate for the plot.
+	 * @param width Width of the area in which to place points.
+	 * @param height Height of the area in which to place points.
+	 * @param indexType Type of spatial index to store the points in.
+	 * @param spacing Expected distance between neighbouring points.
+	 * @throws IllegalArgumentException if indexType is null.
+	 */
+	protected PlotTree(int numPoints, int width, int height, SpatialIndex.Type indexType, int spacing) {
+		if (indexType == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
 		this.numPoints = numPoints;
-		this.root = new Quadtree<Point>(null, new BoundingBox(0, 0, width, height), MAX_POINTS_PER_NODE);
-		this.pointList = new ArrayList<Point>();
+		this.spacing = spacing;
+		this.index = indexType.create(width, height, MAX_POINTS_PER_NODE, spacing);
+		this.pointList = new AbstractList<Point>() {
+			@Override
+			public Point get(int i) {
+				if (i < 0 || i >= index.size()) {
+					throw new IndexOutOfBoundsException("No point at index " + i);
+				}
+				return new Point(index.getX(i), index.getY(i));
+			}
+
+			@Override
+			public int size() {
+				return index.size();
+			}
+		};
 		this.plotWidth = width;
 		this.plotHeight = height;
+		this.kernel = DistanceKernel.forArea(width, height);
 	}	
 	
+	/**
+	 * Place the points from a set seed, so every distribution created gives the same 
+	 * points, for repeatable mosaics and tests.
+	 * 
+	 * @param seed Seed of the random numbers.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.seeded = true;
+	}
+	
+	/**
+	 * @return A new source of random numbers for placing points, from the set seed if 
+	 * there is one.
+	 */
+	protected Random createRandom() {
+		return seeded ? new Random(seed) : new Random();
+	}
+	
 	/**
 	 * Get number of points that should be included in the plot.
 	 * @return Number of points that will be in the plot.
@@ -93,7 +188,110 @@ public abstract class PlotTree {
 	}
 	
 	/**
-	 * Get all of the points currently in this distribution as a List.
+	 * Set how far from exact the closest point searches may be. With an error bound of
+	 * epsilon, the point found for a location is at most 1 + epsilon times as far away 
+	 * as the closest point, and much less of the index is searched. Tiles are always
+	 * labelled exactly. Must not be changed while the distribution is being searched.
+	 * 
+	 * @param epsilon Error bound, 0 to find the closest point exactly.
+	 * @throws IllegalArgumentException if epsilon is negative.
+	 */
+	public void setEpsilon(double epsilon) {
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Error bound cannot be negative.");
+		}
+		this.epsilon = epsilon;
+	}
+	
+	/**
+	 * @return Error bound of closest point searches, 0 if they are exact.
+	 */
+	public double getEpsilon() {
+		return epsilon;
+	}
+	
+	/**
+	 * Get the spatial index the points are stored in, for nearest, k nearest and radius
+	 * queries. Points must be added through insert rather than through the index.
+	 * 
+	 * @return The spatial index of the distribution.
+	 */
+	public SpatialIndex getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Freeze the distribution once all of its points are placed. The points are copied 
+	 * into a compact index that can no longer change, which every later search goes 
+	 * through, and which any number of threads may then search at once without locks.
+	 * Freezing a frozen distribution returns the same index.
+	 * 
+	 * @return The frozen index of the distribution.
+	 */
+	public FrozenIndex freeze() {
+		if (!(index instanceof FrozenIndex)) {
+			index = new FrozenIndex(index, plotWidth, plotHeight, MAX_POINTS_PER_NODE, spacing);
+		}
+		return (FrozenIndex)index;
+	}
+	
+	/**
+	 * @return True if the distribution has been frozen, false otherwise.
+	 */
+	public boolean isFrozen() {
+		return index instanceof FrozenIndex;
+	}
+	
+	/**
+	 * Get the Voronoi diagram of the distribution, clipped to the plot area, holding the
+	 * polygon of the cell of each point for filling, outlining or measuring. The 
+	 * distribution is frozen first, and the diagram is built on the first call and kept,
+	 * so the first call must not be made from several threads at once. The triangulation
+	 * of a Delaunay index is reused rather than built again.
+	 * 
+	 * @return The Voronoi diagram of the points.
+	 */
+	public VoronoiDiagram getVoronoiDiagram() {
+		if (voronoi == null) {
+			voronoi = VoronoiDiagram.build(index.getSites(), freeze().getGraph(), plotWidth, plotHeight);
+		}
+		return voronoi;
+	}
+	
+	/**
+	 * Get the sites of the distribution, to pass over all points without going through
+	 * the index. Points must be added through insert rather than through the store.
+	 * 
+	 * @return The store the points are kept in.
+	 */
+	public SiteStore getSites() {
+		return index.getSites();
+	}
+	
+	/**
+	 * Index the points with a different type of spatial index. Points keep their indexes,
+	 * and stay in the same site store, which the new index is built over in one go.
+	 * 
+	 * @param indexType Type of spatial index to store the points in.
+	 * @throws IllegalArgumentException if indexType is null.
+	 * @throws IllegalStateException if the distribution has been frozen.
+	 */
+	public void setIndexType(SpatialIndex.Type indexType) {
+		if (indexType == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		if (isFrozen()) {
+			throw new IllegalStateException("Distribution is frozen.");
+		}
+		if (indexType == index.getType()) {
+			return;
+		}
+		index = indexType.create(index.getSites(), plotWidth, plotHeight, MAX_POINTS_PER_NODE, spacing);
+	}
+	
+	/**
+	 * Get all of the points currently in this distribution as a List. The list is a 
+	 * read only view of the tree, and each call to get returns a new Point.
 	 * 
 	 * @return List object containing all points in the distribution.
 	 */
@@ -103,21 +301,35 @@ public abstract class PlotTree {
 	
 	/**
 	 * Insert a point into the quadtree. The point will be inserted into the appropriate 
-	 * node of the tree automatically. A copy of the reference will also be stored in a list
-	 * for getting later.
+	 * node of the tree automatically. Its coordinates are copied into the tree, and it
+	 * can be got back from the list at the index of the order it was inserted in.
 	 * 
 	 * @param p Point to insert into the tree.
 	 * @throws IllegalArgumentException if p has a location outside the bounds of the tree.
+	 * @throws UnsupportedOperationException if the distribution has been frozen.
 	 */
 	public void insert(Point p) {
-		if (!root.isMember(p)) {
-			throw new IllegalArgumentException("Point lies outside valid area.");
-		}
-		root.insert(p);
-		pointList.add(p);
+		index.insert(p.x, p.y);
 	}
 	
 	
+	/**
+	 * Insert a whole set of points at once. The points are first put in Z-order, so that
+	 * points close together in the plane get indexes close together, which keeps later 
+	 * passes over the points in index order moving through nearby memory, and the index
+	 * is then built in one go rather than point by point.
+	 * 
+	 * @param x X coordinates of the points, reordered in place.
+	 * @param y Y coordinates of the points, reordered in place.
+	 * @param count Number of points.
+	 * @throws IllegalArgumentException if a point has a location outside the bounds of the tree.
+	 * @throws UnsupportedOperationException if the distribution has been frozen.
+	 */
+	public void insertAll(int[] x, int[] y, int count) {
+		MortonOrder.sort(x, y, count);
+		index.load(x, y, count);
+	}
+	
 	/**
 	 * Find the closest neighbor currently in the quadtree to the given point. 
 	 * 
@@ -126,73 +338,187 @@ public abstract class PlotTree {
 	 * @throws IllegalArgumentException If p lies outside the bounds of the tree
 	 */
 	public Point getClosestNeighbor(Point p, BoundingBox initialSearchZone) {
-		if (!root.isMember(p)) {
+		return getClosestNeighbor(p, initialSearchZone, pointList.get(0));
+	}
+	
+	/**
+	 * Find the closest neighbor currently in the quadtree to the given point, starting 
+	 * the search from a point known to be nearby. Only points closer than the start 
+	 * point, and closer than the farthest corner of the search zone, are looked for.
+	 * Nothing is modified, so once the distribution is complete this may be called 
+	 * from several threads at once.
+	 * 
+	 * @param p Point to find the closest current neighbor of.
+	 * @param initialSearchZone Area around p to search, or null to search the whole plot.
+	 * @param start A point in the distribution to start the search from.
+	 * @return A new Point at the location of the distribution point closest to p, or a
+	 * copy of start if no point is closer.
+	 * @throws IllegalArgumentException If p lies outside the bounds of the tree
+	 */
+	public Point getClosestNeighbor(Point p, BoundingBox initialSearchZone, Point start) {
+		if (!index.contains(p.x, p.y)) {
 			throw new IllegalArgumentException("Point lies outside valid area.");
 		}
 		
-		if (initialSearchZone == null) {
-			initialSearchZone = new BoundingBox(0, 0, plotWidth, plotHeight);
+		long limit = (long)start.distanceSq(p);
+		if (initialSearchZone != null) {
+			//no point of the zone is further away than its farthest corner
+			double baseX = initialSearchZone.getBase().getX();
+			double baseY = initialSearchZone.getBase().getY();
+			double dx = Math.max(Math.abs(baseX - p.x), Math.abs(baseX + initialSearchZone.getWidth() - p.x));
+			double dy = Math.max(Math.abs(baseY - p.y), Math.abs(baseY + initialSearchZone.getHeight() - p.y));
+			limit = Math.min(limit, (long)Math.ceil(dx * dx + dy * dy) + 1);
 		}
 		
-		//place holder to start search for closest. Gets the first point in list
-		Point closestNeighbor = pointList.get(0);
-		closestNeighbor = searchTree(p, closestNeighbor, root, initialSearchZone);
-		return closestNeighbor;
-		
+		int closest = index.nearest(p.x, p.y, -1, limit, epsilon);
+		if (closest < 0) {
+			return new Point(start);
+		}
+		return new Point(index.getX(closest), index.getY(closest));
 	}	
 	
 	/**
-	 * Search the tree for a closest neighbor recursively.
+	 * Find the index in the distribution list of the point closest to the given location,
+	 * starting from a point known to be nearby. No shared state is modified, so once 
+	 * the distribution is complete this may be called from several threads at once.
 	 * 
-	 * @param target Point to find closest neighbor of
-	 * @param closest Point that is the closest found to target
-	 * @param searchNode The node of the tree being searched at this stage of the search
-	 * @param searchZone The current area around target being searched.
-	 * @return The closest point found to target.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index of a point to start the search from, ideally one close to x, y.
+	 * @return Index of the point closest to x, y, within the error bound.
 	 */
-	private Point searchTree(Point target, Point closest, Quadtree<Point> searchNode, BoundingBox searchZone) {
-
-		// does the current search zone intersect the area of the node being looked at
-		if (searchNode.getModel().isCodomain(searchZone)) {
-			
-			// current node has children, recurse into children
-			if (searchNode.hasChildren()) {
-				for (Quadrant quad : Quadrant.values()) {
-					searchTree(target, closest, searchNode.getChildNode(quad), searchZone);					
-				}
-				
-			//current node does not have children, search points at this node, if any 	
-			} else {
-				if (!searchNode.getData().isEmpty()) {
-					//check if any points are closer to target than closest
-					double closestDistance = target.distance(closest);
-					for(Point candidate : searchNode.getData()) {
-						double candidateDistance = target.distance(candidate);
-						if (candidateDistance < closestDistance) {
-							closestDistance = candidateDistance;
-							//modify objects so they will carry over through recursive calls
-							closest.move(candidate.x, candidate.y);
-						    resizeSearchZone(target, closest, searchZone);
-						}
-					}
-				}
-			}
-		} 
-		return closest;
+	public int getClosestIndex(int x, int y, int start) {
+		return index.nearest(x, y, start, index.distanceSq(start, x, y), epsilon);
 	}
 	
 	/**
-	 * Change the dimensions of the search zone
+	 * Find the index in the distribution list of the point closest to the given location,
+	 * with no point to start from. Allocates nothing, and may be called from several 
+	 * threads at once once the distribution is complete.
 	 * 
-	 * @param target Point the search box is centered on.
-	 * @param closest Closest point found to the target.
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Index of the point closest to x, y, within the error bound, or -1 if the 
+	 * distribution is empty.
 	 */
-	private void resizeSearchZone(Point target, Point closest, BoundingBox searchZone) {
-		double distance = target.distance(closest);
-		double side = distance * 2;
-		double baseX = target.getX() - distance;
-		double baseY = target.getY() - distance;
-		searchZone.resize(baseX, baseY, side, side);
+	public int getClosestIndex(int x, int y) {
+		return index.nearest(x, y, -1, Long.MAX_VALUE, epsilon);
+	}
+	
+	/**
+	 * Find the points of the distribution closest to a location, without allocating. 
+	 * May be called from several threads at once once the distribution is complete.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param k Number of points to find.
+	 * @param out Array to write the indexes of the points into, closest first.
+	 * @return Number of points found, k or all points if there are fewer than k.
+	 * @throws IllegalArgumentException if k is less than 1 or out is shorter than k.
+	 */
+	public int kNearest(int x, int y, int k, int[] out) {
+		return index.kNearest(x, y, k, out);
+	}
+	
+	/**
+	 * Check if any point of the distribution lies closer to a location than a given 
+	 * distance. Stops at the first point found, so is cheaper than finding the closest.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param radius Distance points must be closer than.
+	 * @return True if a point is closer than radius to x, y, false otherwise.
+	 */
+	public boolean anyWithin(int x, int y, int radius) {
+		return index.anyWithin(x, y, radius);
+	}
+	
+	/**
+	 * Find the closest point of every pixel of a rectangular tile, touching the index 
+	 * only a few times for the whole tile. The closest points of the corners bound how
+	 * far any pixel of the tile can be from its own closest point, so one radius search
+	 * finds every point that could be closest to some pixel. Points that are further 
+	 * than another point from all four corners are dropped, as the half of the plane 
+	 * closer to the other point then holds the whole tile, and each pixel is labelled 
+	 * by comparing the few points left. Nothing is modified, so once the distribution 
+	 * is complete this may be called from several threads at once.
+	 * 
+	 * @param x0 Left column of the tile.
+	 * @param y0 Top row of the tile.
+	 * @param x1 Right column of the tile, inclusive.
+	 * @param y1 Bottom row of the tile, inclusive.
+	 * @param labels Labels of the whole area row by row, set to the index of the point 
+	 * closest to each pixel of the tile.
+	 * @param width Width of the area labels covers.
+	 * @param hint Index of a point close to the tile to start searching from.
+	 * @return Index of the point closest to the top right corner, a good hint for the 
+	 * next tile along.
+	 */
+	public int labelTile(int x0, int y0, int x1, int y1, int[] labels, int width, int hint) {
+		int[] cornerX = {x0, x1, x0, x1};
+		int[] cornerY = {y0, y0, y1, y1};
+		int topLeft = index.nearest(x0, y0, hint);
+		int[] corners = {topLeft, index.nearest(x1, y0, topLeft), 
+				index.nearest(x0, y1, topLeft), index.nearest(x1, y1, topLeft)};
+		
+		//every pixel is within half the tile of a corner, so is no further than this from a point
+		long reach = 0;
+		for (int k = 0; k < 4; k++) {
+			reach = Math.max(reach, index.distanceSq(corners[k], cornerX[k], cornerY[k]));
+		}
+		int halfWidth = (x1 - x0 + 1) / 2;
+		int halfHeight = (y1 - y0 + 1) / 2;
+		double bound = Math.sqrt(reach) + Math.sqrt((double)halfWidth * halfWidth + halfHeight * halfHeight);
+		long boundSq = (long)Math.ceil(bound * bound) + 1;
+		int centerX = (x0 + x1) >>> 1;
+		int centerY = (y0 + y1) >>> 1;
+		int centerReach = (int)Math.ceil(Math.sqrt(
+				(double)(x1 - centerX) * (x1 - centerX) + (double)(y1 - centerY) * (y1 - centerY)));
+		int[] found = index.withinRadius(centerX, centerY, (int)Math.ceil(bound) + centerReach + 1);
+		
+		//keep the points close enough to the tile, with their distances to the corners
+		int[] candidates = new int[found.length];
+		long[] cornerDistance = new long[found.length * 4];
+		int count = 0;
+		for (int point : found) {
+			int px = index.getX(point);
+			int py = index.getY(point);
+			long dx = Math.max(0, Math.max(x0 - px, px - x1));
+			long dy = Math.max(0, Math.max(y0 - py, py - y1));
+			if (dx * dx + dy * dy <= boundSq) {
+				for (int k = 0; k < 4; k++) {
+					cornerDistance[count * 4 + k] = index.distanceSq(point, cornerX[k], cornerY[k]);
+				}
+				candidates[count++] = point;
+			}
+		}
+		
+		//drop points another point is strictly closer than at every corner
+		int kept = 0;
+		for (int c = 0; c < count; c++) {
+			boolean beaten = false;
+			for (int other = 0; other < count && !beaten; other++) {
+				beaten = other != c
+						&& cornerDistance[other * 4] < cornerDistance[c * 4]
+						&& cornerDistance[other * 4 + 1] < cornerDistance[c * 4 + 1]
+						&& cornerDistance[other * 4 + 2] < cornerDistance[c * 4 + 2]
+						&& cornerDistance[other * 4 + 3] < cornerDistance[c * 4 + 3];
+			}
+			if (!beaten) {
+				candidates[kept++] = candidates[c];
+			}
+		}
+		
+		int[] candidateX = new int[kept];
+		int[] candidateY = new int[kept];
+		for (int c = 0; c < kept; c++) {
+			candidateX[c] = index.getX(candidates[c]);
+			candidateY[c] = index.getY(candidates[c]);
+		}
+		for (int y = y0; y <= y1; y++) {
+			kernel.closestRow(candidateX, candidateY, candidates, kept, x0, y, x1 - x0 + 1, labels, y * width + x0);
+		}
+		return corners[1];
 	}
 	
 	/**
@@ -200,7 +526,8 @@ public abstract class PlotTree {
 	 * data structures to save space and prepare for another run.
 	 */
 	public void cleanUp() {
-		root = null;
+		index = null;
 		pointList = null;
+		voronoi = null;
 	}
 }
@@ -0,0 +1,664 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.util.Arrays;
+
+/**
+ * A quadtree specialised for points with integer coordinates, kept entirely in flat
+ * int arrays. Nodes are array indexes: the bounds of every node are held in parallel
+ * arrays, and the four children of a node are stored next to each other in quadrant
+ * order, so a node only needs the index of its first child. The points of a leaf are 
+ * chained through an array of next indexes, and points are identified by the order 
+ * they were inserted in.
+ * 
+ * Compared to Quadtree, which uses a map of children, a list of boxed points and a
+ * bounding box for every node, no objects are made per node or per point, and a 
+ * search reads a handful of arrays that sit close together in memory.
+ *
+ * @author Andrew Trismen
+ */
+public class PointQuadtree implements SpatialIndex {
+	
+	/** Value of firstChild for a leaf node, and of next for the last point of a leaf */
+	private static final int NONE = -1;
+	
+	/** Position of the child of a point noted in the top bits of its index while loading */
+	private static final int CHILD_SHIFT = 30;
+	
+	/** Bits of an index below the noted child */
+	private static final int POINT_MASK = (1 << CHILD_SHIFT) - 1;
+	
+	/** Number of nodes or points room is made for when the tree is created */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** Maximum number of points to store in a leaf before splitting it */
+	private final int maxPointsPerNode;
+	
+	/** Left column of each node */
+	private int[] minX;
+	
+	/** Top row of each node */
+	private int[] minY;
+	
+	/** Column after the right edge of each node */
+	private int[] maxX;
+	
+	/** Row after the bottom edge of each node */
+	private int[] maxY;
+	
+	/** Index of the NW child of each node, followed by NE, SW and SE, or NONE for a leaf */
+	private int[] firstChild;
+	
+	/** First point of each leaf, or NONE for an empty leaf */
+	private int[] head;
+	
+	/** Number of points in each leaf */
+	private int[] count;
+	
+	/** Number of nodes in the tree */
+	private int nodes;
+	
+	/** The sites the points are stored in */
+	private final SiteStore sites;
+	
+	/** X coordinate of each point, the array of the site store */
+	private int[] pointX;
+	
+	/** Y coordinate of each point, the array of the site store */
+	private int[] pointY;
+	
+	/** Next point in the same leaf as each point, or NONE */
+	private int[] next;
+	
+	/** Number of points in the tree */
+	private int points;
+	
+	/**
+	 * Construct an empty tree covering an area with its top left corner at 0, 0.
+	 * 
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf before splitting it.
+	 * @throws IllegalArgumentException if the area is empty or maxPointsPerNode is less than 1.
+	 */
+	public PointQuadtree(int width, int height, int maxPointsPerNode) {
+		this(new SiteStore(), width, height, maxPointsPerNode);
+	}
+	
+	/**
+	 * Construct a tree covering an area with its top left corner at 0, 0, indexing
+	 * the sites of a store. Any sites already in the store are indexed in one go.
+	 * 
+	 * @param sites Store to keep the points in, possibly holding sites already.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param maxPointsPerNode Maximum number of points to store in a leaf before splitting it.
+	 * @throws IllegalArgumentException if the area is empty, or a site lies outside it, or maxPointsPerNode is less than 1.
+	 */
+	public PointQuadtree(SiteStore sites, int width, int height, int maxPointsPerNode) {
+		if (width < 1 || height < 1 || maxPointsPerNode < 1) {
+			throw new IllegalArgumentException("Size and node capacity must be positive.");
+		}
+		this.maxPointsPerNode = maxPointsPerNode;
+		
+		minX = new int[INITIAL_CAPACITY];
+		minY = new int[INITIAL_CAPACITY];
+		maxX = new int[INITIAL_CAPACITY];
+		maxY = new int[INITIAL_CAPACITY];
+		firstChild = new int[INITIAL_CAPACITY];
+		head = new int[INITIAL_CAPACITY];
+		count = new int[INITIAL_CAPACITY];
+		this.sites = sites;
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(sites.size(), INITIAL_CAPACITY)];
+		addNode(0, 0, width, height);
+		for (int i = 0; i < sites.size(); i++) {
+			if (!contains(pointX[i], pointY[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		if (sites.size() > 0) {
+			points = sites.size();
+			indexSites();
+		}
+	}
+	
+	@Override
+	public Type getType() {
+		return Type.QUADTREE;
+	}
+	
+	@Override
+	public SiteStore getSites() {
+		return sites;
+	}
+	
+	/**
+	 * @return Number of points in the tree.
+	 */
+	public int size() {
+		return points;
+	}
+	
+	/**
+	 * @return Number of nodes in the tree, inner nodes and leaves.
+	 */
+	public int getNodeCount() {
+		return nodes;
+	}
+	
+	/**
+	 * @param index Index of a point.
+	 * @return X coordinate of the point.
+	 */
+	public int getX(int index) {
+		return pointX[index];
+	}
+	
+	/**
+	 * @param index Index of a point.
+	 * @return Y coordinate of the point.
+	 */
+	public int getY(int index) {
+		return pointY[index];
+	}
+	
+	/**
+	 * Check if a location lies inside the area covered by the tree.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return True if the location is inside the area, false otherwise.
+	 */
+	public boolean contains(int x, int y) {
+		return x >= minX[0] && x < maxX[0] && y >= minY[0] && y < maxY[0];
+	}
+	
+	/**
+	 * Insert a point into the leaf covering it, splitting the leaf if it becomes too full.
+	 * 
+	 * @param x X coordinate of the point.
+	 * @param y Y coordinate of the point.
+	 * @return Index of the point, which is the number of points inserted before it.
+	 * @throws IllegalArgumentException if the point lies outside the area of the tree.
+	 */
+	public int insert(int x, int y) {
+		if (!contains(x, y)) {
+			throw new IllegalArgumentException("Point lies outside valid area.");
+		}
+		int index = sites.add(x, y);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		if (index == next.length) {
+			next = Arrays.copyOf(next, index * 2);
+		}
+		points++;
+		
+		int node = leafOf(x, y);
+		next[index] = head[node];
+		head[node] = index;
+		count[node]++;
+		if (count[node] > maxPointsPerNode) {
+			split(node);
+		}
+		return index;
+	}
+	
+	/**
+	 * Insert many points at once. Into an empty tree, the tree is built from the top
+	 * down, each node sharing its points out to its children in one pass that keeps them
+	 * in the order given, with no point reinserted.
+	 * 
+	 * @param x X coordinates of the points.
+	 * @param y Y coordinates of the points.
+	 * @param count Number of points, which are given indexes in the order given.
+	 * @throws IllegalArgumentException if a point lies outside the area of the tree.
+	 */
+	@Override
+	public void load(int[] x, int[] y, int count) {
+		if (points > 0) {
+			for (int i = 0; i < count; i++) {
+				insert(x[i], y[i]);
+			}
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			if (!contains(x[i], y[i])) {
+				throw new IllegalArgumentException("Point lies outside valid area.");
+			}
+		}
+		sites.addAll(x, y, count);
+		pointX = sites.getXArray();
+		pointY = sites.getYArray();
+		next = new int[Math.max(count, INITIAL_CAPACITY)];
+		points = count;
+		indexSites();
+	}
+	
+	/**
+	 * Build the tree from the top down over every site in the store, into an empty root.
+	 * The node arrays are trimmed to the nodes built, as a tree built in one go is seldom
+	 * inserted into.
+	 */
+	private void indexSites() {
+		int[] order = new int[points];
+		for (int i = 0; i < points; i++) {
+			order[i] = i;
+		}
+		build(0, order, new int[points], 0, points);
+		minX = Arrays.copyOf(minX, nodes);
+		minY = Arrays.copyOf(minY, nodes);
+		maxX = Arrays.copyOf(maxX, nodes);
+		maxY = Arrays.copyOf(maxY, nodes);
+		firstChild = Arrays.copyOf(firstChild, nodes);
+		head = Arrays.copyOf(head, nodes);
+		count = Arrays.copyOf(count, nodes);
+	}
+	
+	/**
+	 * Make a leaf into a subtree holding a range of points, splitting it until every 
+	 * leaf is small enough or one pixel in size.
+	 * 
+	 * @param node Index of the leaf.
+	 * @param order Indexes of points, the range of which is reordered by child.
+	 * @param scratch Array as long as order to reorder through.
+	 * @param from First position in order of the range.
+	 * @param to Position in order after the range.
+	 */
+	private void build(int node, int[] order, int[] scratch, int from, int to) {
+		int x0 = minX[node];
+		int y0 = minY[node];
+		int x1 = maxX[node];
+		int y1 = maxY[node];
+		if (to - from <= maxPointsPerNode || (x1 - x0 < 2 && y1 - y0 < 2)) {
+			//chain from the back so the points of the leaf stay in the order given
+			for (int i = to - 1; i >= from; i--) {
+				next[order[i]] = head[node];
+				head[node] = order[i];
+			}
+			count[node] = to - from;
+			return;
+		}
+		
+		int midX = x0 + (x1 - x0 + 1) / 2;
+		int midY = y0 + (y1 - y0 + 1) / 2;
+		int first = addNode(x0, y0, midX, midY);
+		addNode(midX, y0, x1, midY);
+		addNode(x0, midY, midX, y1);
+		addNode(midX, midY, x1, y1);
+		firstChild[node] = first;
+		
+		//note the child of each point in the top bits of its place in order, counting them
+		int[] starts = new int[5];
+		for (int i = from; i < to; i++) {
+			int point = order[i];
+			int child = (pointX[point] >= midX ? 1 : 0) | (pointY[point] >= midY ? 2 : 0);
+			order[i] = point | (child << CHILD_SHIFT);
+			starts[child + 1]++;
+		}
+		starts[0] = from;
+		for (int c = 1; c <= 4; c++) {
+			starts[c] += starts[c - 1];
+		}
+		
+		//copy the points out grouped by child, keeping their order within each child
+		int[] fill = Arrays.copyOf(starts, 4);
+		for (int i = from; i < to; i++) {
+			scratch[fill[order[i] >>> CHILD_SHIFT]++] = order[i] & POINT_MASK;
+		}
+		System.arraycopy(scratch, from, order, from, to - from);
+		
+		for (int c = 0; c < 4; c++) {
+			build(first + c, order, scratch, starts[c], starts[c + 1]);
+		}
+	}
+	
+	/**
+	 * Find the leaf covering a location inside the tree.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Index of the leaf.
+	 */
+	private int leafOf(int x, int y) {
+		int node = 0;
+		while (firstChild[node] != NONE) {
+			node = childOf(node, x, y);
+		}
+		return node;
+	}
+	
+	/**
+	 * Find the child of an inner node covering a location.
+	 * 
+	 * @param node Index of an inner node.
+	 * @param x X coordinate of a location inside the node.
+	 * @param y Y coordinate of a location inside the node.
+	 * @return Index of the child covering the location.
+	 */
+	private int childOf(int node, int x, int y) {
+		int first = firstChild[node];
+		int child = first;
+		//the NE child starts at the middle of the node, and the SW child below the middle
+		if (x >= minX[first + 1]) {
+			child += 1;
+		}
+		if (y >= minY[first + 2]) {
+			child += 2;
+		}
+		return child;
+	}
+	
+	/**
+	 * Divide a leaf into four children and move its points down into them. A leaf one
+	 * pixel in size can not be divided and is left to hold any number of points.
+	 * 
+	 * @param node Index of the leaf.
+	 */
+	private void split(int node) {
+		int x0 = minX[node];
+		int y0 = minY[node];
+		int x1 = maxX[node];
+		int y1 = maxY[node];
+		if (x1 - x0 < 2 && y1 - y0 < 2) {
+			return;
+		}
+		//the first half of an odd side is the larger, so no child of a wider side is empty
+		int midX = x0 + (x1 - x0 + 1) / 2;
+		int midY = y0 + (y1 - y0 + 1) / 2;
+		
+		int child = addNode(x0, y0, midX, midY);
+		addNode(midX, y0, x1, midY);
+		addNode(x0, midY, midX, y1);
+		addNode(midX, midY, x1, y1);
+		firstChild[node] = child;
+		
+		int point = head[node];
+		head[node] = NONE;
+		count[node] = 0;
+		while (point != NONE) {
+			int following = next[point];
+			int leaf = childOf(node, pointX[point], pointY[point]);
+			next[point] = head[leaf];
+			head[leaf] = point;
+			count[leaf]++;
+			point = following;
+		}
+		
+		//all points may have landed in the same child
+		for (int c = child; c < child + 4; c++) {
+			if (count[c] > maxPointsPerNode) {
+				split(c);
+			}
+		}
+	}
+	
+	/**
+	 * Add an empty leaf to the node arrays, growing them if needed.
+	 * 
+	 * @return Index of the new leaf.
+	 */
+	private int addNode(int x0, int y0, int x1, int y1) {
+		if (nodes == minX.length) {
+			int capacity = nodes * 2;
+			minX = Arrays.copyOf(minX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			maxX = Arrays.copyOf(maxX, capacity);
+			maxY = Arrays.copyOf(maxY, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			head = Arrays.copyOf(head, capacity);
+			count = Arrays.copyOf(count, capacity);
+		}
+		int node = nodes++;
+		minX[node] = x0;
+		minY[node] = y0;
+		maxX[node] = x1;
+		maxY[node] = y1;
+		firstChild[node] = NONE;
+		head[node] = NONE;
+		count[node] = 0;
+		return node;
+	}
+	
+	/**
+	 * Find the point closest to a location, starting from a point known to be nearby.
+	 * Nothing is modified, so this may be called from several threads at once as long 
+	 * as no points are being inserted.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index of a point to start from, ideally one close to x, y.
+	 * @return Index of the point closest to x, y.
+	 */
+	public int nearest(int x, int y, int start) {
+		return nearest(x, y, start, distanceSq(start, x, y));
+	}
+	
+	/**
+	 * Find the point closest to a location, searching from the root with no starting point.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Index of the point closest to x, y, or -1 if the tree is empty.
+	 */
+	public int nearest(int x, int y) {
+		return nearest(x, y, NONE, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Find the point closest to a location, if any is closer than a given distance.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index to return if no point is closer than limit.
+	 * @param limit Squared distance points must be closer than.
+	 * @return Index of the point closest to x, y, or start.
+	 */
+	public int nearest(int x, int y, int start, long limit) {
+		return search(x, y, 0, start, limit, 1);
+	}
+	
+	@Override
+	public int nearest(int x, int y, int start, long limit, double epsilon) {
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Error bound cannot be negative.");
+		}
+		return search(x, y, 0, start, limit, (1 + epsilon) * (1 + epsilon));
+	}
+	
+	/**
+	 * Search a node for the point closest to a location recursively. Children are 
+	 * visited nearest first, so the closest point tends to be found early, and nodes 
+	 * that lie further away than the closest point found so far are skipped. Distances
+	 * are squared and kept in whole numbers, and nothing is allocated.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param closest Index of the closest point found so far.
+	 * @param closestDistance Squared distance from the location to the closest point.
+	 * @param factor Square of how many times further than the closest point the point
+	 * found may be, 1 to find the closest.
+	 * @return Index of the closest point found.
+	 */
+	private int search(int x, int y, int node, int closest, long closestDistance, double factor) {
+		
+		//squared distance from the location to the nearest pixel of the node
+		long dx = Math.max(0, Math.max(minX[node] - x, x - (maxX[node] - 1)));
+		long dy = Math.max(0, Math.max(minY[node] - y, y - (maxY[node] - 1)));
+		if ((dx * dx + dy * dy) * factor >= closestDistance) {
+			return closest;
+		}
+		
+		int first = firstChild[node];
+		if (first != NONE) {
+			//visit the child on the same side of both middle lines first, then the one
+			//across the nearer middle line, then across the other, then the far corner
+			int midX = minX[first + 1];
+			int midY = minY[first + 2];
+			int side = (x >= midX ? 1 : 0) | (y >= midY ? 2 : 0);
+			//order of the children relative to side, packed four bits per step
+			int order = Math.abs(x - midX) <= Math.abs(y - midY) ? 0x3210 : 0x3120;
+			for (int step = 0; step < 16; step += 4) {
+				int found = search(x, y, first + (side ^ ((order >> step) & 3)), closest, closestDistance, factor);
+				if (found != closest) {
+					closest = found;
+					closestDistance = distanceSq(closest, x, y);
+				}
+			}
+		} else {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				long distance = distanceSq(point, x, y);
+				if (distance < closestDistance) {
+					closestDistance = distance;
+					closest = point;
+				}
+			}
+		}
+		return closest;
+	}
+	
+	@Override
+	public int[] kNearest(int x, int y, int k) {
+		int[] out = new int[NeighbourHeap.count(k, points, null)];
+		kNearest(x, y, k, out);
+		return out;
+	}
+	
+	@Override
+	public int[] withinRadius(int x, int y, int radius) {
+		long limit = (long)radius * radius;
+		int[] heap = new int[NeighbourHeap.capacity(points, (long)(maxX[0] - minX[0]) * (maxY[0] - minY[0]), limit)];
+		while (heap.length > 0) {
+			int size = gather(x, y, 0, heap, 0, heap.length, limit);
+			if (size < heap.length || size == points) {
+				return Arrays.copyOf(heap, size);
+			}
+			//the heap filled up so closer points may have pushed out others in range
+			heap = new int[NeighbourHeap.grow(heap, points, limit, pointX, pointY, x, y)];
+		}
+		return heap;
+	}
+	
+	@Override
+	public int kNearest(int x, int y, int k, int[] out) {
+		k = NeighbourHeap.count(k, points, out);
+		if (k == 0) {
+			return 0;
+		}
+		int size = gather(x, y, 0, out, 0, k, Long.MAX_VALUE);
+		NeighbourHeap.sort(out, size, pointX, pointY, x, y);
+		return size;
+	}
+	
+	@Override
+	public boolean anyWithin(int x, int y, int radius) {
+		return anyWithin(x, y, 0, (long)radius * radius);
+	}
+	
+	/**
+	 * @param index Index of a point.
+	 * @param x X coordinate of a location.
+	 * @param y Y coordinate of a location.
+	 * @return Squared distance from the point to the location.
+	 */
+	public long distanceSq(int index, int x, int y) {
+		long dx = pointX[index] - x;
+		long dy = pointY[index] - y;
+		return dx * dx + dy * dy;
+	}
+	
+	/**
+	 * Keep every point of a node closer than those kept so far, recursively, visiting 
+	 * children in the same order as search.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param heap Heap of the points kept.
+	 * @param size Number of points kept.
+	 * @param k Most points to keep.
+	 * @param limit Squared distance points must be closer than to be kept.
+	 * @return Number of points kept afterwards.
+	 */
+	private int gather(int x, int y, int node, int[] heap, int size, int k, long limit) {
+		long dx = Math.max(0, Math.max(minX[node] - x, x - (maxX[node] - 1)));
+		long dy = Math.max(0, Math.max(minY[node] - y, y - (maxY[node] - 1)));
+		if (dx * dx + dy * dy >= NeighbourHeap.bound(heap, size, k, limit, pointX, pointY, x, y)) {
+			return size;
+		}
+		
+		int first = firstChild[node];
+		if (first != NONE) {
+			int midX = minX[first + 1];
+			int midY = minY[first + 2];
+			int side = (x >= midX ? 1 : 0) | (y >= midY ? 2 : 0);
+			int order = Math.abs(x - midX) <= Math.abs(y - midY) ? 0x3210 : 0x3120;
+			for (int step = 0; step < 16; step += 4) {
+				size = gather(x, y, first + (side ^ ((order >> step) & 3)), heap, size, k, limit);
+			}
+		} else {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				size = NeighbourHeap.offer(heap, size, k, limit, point, distanceSq(point, x, y), pointX, pointY, x, y);
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Check if any point of a node is closer to a location than a limit, stopping at the
+	 * first found, and visiting children in the same order as search.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param node Index of the node to search.
+	 * @param limit Squared distance a point must be closer than.
+	 * @return True if a point is closer than limit, false otherwise.
+	 */
+	private boolean anyWithin(int x, int y, int node, long limit) {
+		long dx = Math.max(0, Math.max(minX[node] - x, x - (maxX[node] - 1)));
+		long dy = Math.max(0, Math.max(minY[node] - y, y - (maxY[node] - 1)));
+		if (dx * dx + dy * dy >= limit) {
+			return false;
+		}
+		
+		int first = firstChild[node];
+		if (first != NONE) {
+			int midX = minX[first + 1];
+			int midY = minY[first + 2];
+			int side = (x >= midX ? 1 : 0) | (y >= midY ? 2 : 0);
+			int order = Math.abs(x - midX) <= Math.abs(y - midY) ? 0x3210 : 0x3120;
+			for (int step = 0; step < 16; step += 4) {
+				if (anyWithin(x, y, first + (side ^ ((order >> step) & 3)), limit)) {
+					return true;
+				}
+			}
+		} else {
+			for (int point = head[node]; point != NONE; point = next[point]) {
+				if (distanceSq(point, x, y) < limit) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
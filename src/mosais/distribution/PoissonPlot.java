@@ -19,8 +19,11 @@
  */
 package mosais.distribution;
 
-import java.awt.Point;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.model.ParallelBands;
 
 /**
  * A distribution of points where a Poisson Disc algorithm is used to generate 
@@ -31,7 +34,7 @@ import java.util.*;
 public class PoissonPlot extends PlotTree {
 	
 	/** Max times to try to find a valid candidate before declaring the seed inactive */
-	public static final int MAX_CANDIDATES = 100;
+	public static final int MAX_CANDIDATES = 30;
 	
 	/** Minimum distance between any 2 points, higher = less dense, lower = more dense */
 	public static final int MIN_DISTANCE = 8;
@@ -39,13 +42,26 @@ public class PoissonPlot extends PlotTree {
 	/** Make sure points will not lie on the edge and break bounding */
 	public static final int EDGE_BUFFER = 1;
 	
+	/** Number of background grid cells across a tile, the area sampled by one thread */
+	private static final int TILE_CELLS = 32;
+	
+	/** 
+	 * Offsets of the cells around a candidate's cell that may hold a point too close to
+	 * it, nearest first so a candidate is usually turned down after a cell or two. The 
+	 * corners of the 5 by 5 block are a whole cell apart from the candidate's cell both
+	 * ways, so their points are always at least the minimum distance away.
+	 */
+	private static final int[] NEIGHBOUR_COLUMNS = {0, -1, 1, 0, 0, -1, 1, -1, 1, 
+			-2, 2, 0, 0, -2, 2, -2, 2, -1, 1, -1, 1};
+	
+	/** Row offsets going with NEIGHBOUR_COLUMNS */
+	private static final int[] NEIGHBOUR_ROWS = {0, 0, 0, -1, 1, -1, -1, 1, 1, 
+			0, 0, -2, 2, -1, -1, 1, 1, -2, -2, 2, 2};
+	
 	// make this based on the pixel density of the input image
 	/** Minimum distance between any 2 points in the distribution. */
 	private int minDistance;
 	
-	/** List of all points that can be used as seeds. */
-	private List<Point> activePoints;
-
 	/**
 	 * Create a new Poisson disc based distribution plot. The numPoints field is unused in this
 	 * implementation and can be ignored; included for compatibility with super class.
@@ -55,86 +71,282 @@ public class PoissonPlot extends PlotTree {
 	 * @param height Height of the area to distribute points over
 	 */
 	public PoissonPlot(int numPoints, int width, int height) {
-		super(numPoints, width, height);
+		this(numPoints, width, height, SpatialIndex.Type.QUADTREE);
+	}
+	
+	/**
+	 * Create a new Poisson disc based distribution plot, stored in the given type of
+	 * spatial index.
+	 * 
+	 * @param numPoints Minimum distance between points, see PoissonPlot(int, int, int)
+	 * @param width Width of the area to distribute points over
+	 * @param height Height of the area to distribute points over
+	 * @param indexType Type of spatial index to store the points in
+	 */
+	public PoissonPlot(int numPoints, int width, int height, SpatialIndex.Type indexType) {
+		//points are at least the minimum distance apart
+		super(numPoints, width, height, indexType, numPoints);
 		
 		// tweak this to get the right performance and effect
 		//TODO: lean up dependency, density is determined in Mosais.java
 		this.minDistance = numPoints;
-		this.activePoints = new ArrayList<Point>();
 	}
 
 	/** 
 	 * Create a Poisson Disc Distribution where all random points are generated in
 	 * a disc around an existing seed point, and the inner ring of the disc defines
 	 * the minimum distance 1 point is allowed to be to another.
+	 * 
+	 * Points are placed as in Bridson's algorithm. Candidates are drawn evenly over the
+	 * ring between 1 and 2 minimum distances from the seed, and are checked against a 
+	 * background grid with cells small enough that each holds at most 1 point, so only
+	 * the 5 by 5 block of cells around a candidate, less its corners, need to be looked at. The points are
+	 * then inserted together, so the whole distribution takes time in proportion to the
+	 * number of points.
 	 */
 	@Override
 	public void createDistribution() {
+		createDistribution(null);
+	}
+	
+	/**
+	 * Create a Poisson Disc Distribution as createDistribution() does, with the area cut
+	 * into square tiles of the background grid that are filled on the threads of a pool.
+	 * The tiles are filled in 4 phases, every other tile across and down in each, so 
+	 * the tiles filled at once are a whole tile apart and never look at each other's 
+	 * cells. Each tile has its own source of random numbers, seeded in turn from the 
+	 * plot's, so the points do not depend on the number of threads.
+	 * 
+	 * @param pool Pool to generate in, or null to generate on the calling thread.
+	 */
+	@Override
+	public void createDistribution(ForkJoinPool pool) {
+		final Sampler sampler = new Sampler(getPlotWidth(), getPlotHeight(), Math.max(minDistance, 1));
+		final int tileColumns = (sampler.columns + TILE_CELLS - 1) / TILE_CELLS;
+		int tileRows = (sampler.rows + TILE_CELLS - 1) / TILE_CELLS;
+		Random rnd = createRandom();
+		final long[] seeds = new long[tileColumns * tileRows];
+		for (int tile = 0; tile < seeds.length; tile++) {
+			seeds[tile] = rnd.nextLong();
+		}
 		
-		Random rnd = new Random();
-		//generate an initial seed point randomly
-		Point p = new Point(rnd.nextInt(getPlotWidth() + 1), rnd.nextInt(getPlotHeight()) + 1);
-		insert(p);
-		activePoints.add(p);
+		for (int phase = 0; phase < 4; phase++) {
+			final int firstColumn = phase & 1;
+			final int firstRow = phase >> 1;
+			final int phaseColumns = (tileColumns - firstColumn + 1) / 2;
+			int phaseRows = (tileRows - firstRow + 1) / 2;
+			new ParallelBands() {
+				@Override
+				protected void run(int start, int end) {
+					for (int t = start; t < end; t++) {
+						int tx = firstColumn + 2 * (t % phaseColumns);
+						int ty = firstRow + 2 * (t / phaseColumns);
+						sampler.fillTile(tx, ty, new Random(seeds[ty * tileColumns + tx]));
+					}
+				}
+			}.invoke(pool, phaseColumns * phaseRows);
+		}
 		
-		//Begin generating points until there are no more active seed points.
-		while (!activePoints.isEmpty()) {
-			
-			// get an active seed randomly
-			
-			Point seed = activePoints.get(rnd.nextInt(activePoints.size()));
-			
-			// Generate candidate coordinate limits based on max distance from seed.
-			// candidates must be within the plot area.
-			int minX = seed.x - (2 * minDistance);
-			if (minX < 0) minX = 0;
-			int minY = seed.y - (2 * minDistance);
-			if (minY < 0) minY = 0;
-			int maxX = seed.x + (2 * minDistance);
-			if (maxX >= getPlotWidth()) maxX = getPlotWidth() - EDGE_BUFFER;
-			int maxY = seed.y + (2 * minDistance);
-			if (maxY >= getPlotHeight()) maxY = getPlotHeight() - EDGE_BUFFER;
+		//gather the points from the grid, a row of cells at a time
+		int count = 0;
+		for (int cell = 0; cell < sampler.gridX.length; cell++) {
+			if (sampler.gridX[cell] >= 0) {
+				count++;
+			}
+		}
+		int[] x = new int[count];
+		int[] y = new int[count];
+		count = 0;
+		for (int cell = 0; cell < sampler.gridX.length; cell++) {
+			if (sampler.gridX[cell] >= 0) {
+				x[count] = sampler.gridX[cell];
+				y[count] = sampler.gridY[cell];
+				count++;
+			}
+		}
+		insertAll(x, y, count);
+	}
+	
+	/**
+	 * The background grid of a distribution being made, which holds the point in each 
+	 * cell, and fills tiles of it with points.
+	 */
+	private static class Sampler {
+		
+		/** Width of the area */
+		private final int width;
+		
+		/** Height of the area */
+		private final int height;
+		
+		/** Minimum distance between points */
+		private final int distance;
+		
+		/** Square of the minimum distance */
+		private final long distanceSq;
+		
+		/** Width and height of a cell, whose diagonal is the minimum distance */
+		private final double cellSize;
+		
+		/** Number of columns of cells */
+		private final int columns;
+		
+		/** Number of rows of cells */
+		private final int rows;
+		
+		/** X coordinate of the point in each cell, or -1 if the cell is empty */
+		private final int[] gridX;
+		
+		/** Y coordinate of the point in each cell */
+		private final int[] gridY;
+		
+		/**
+		 * Create an empty grid over an area.
+		 * 
+		 * @param width Width of the area.
+		 * @param height Height of the area.
+		 * @param distance Minimum distance between points, at least 1.
+		 */
+		Sampler(int width, int height, int distance) {
+			this.width = width;
+			this.height = height;
+			this.distance = distance;
+			this.distanceSq = (long) distance * distance;
+			//a cell's diagonal is the minimum distance, so 2 points never share a cell
+			this.cellSize = distance / Math.sqrt(2);
+			this.columns = (int) Math.ceil(width / cellSize);
+			this.rows = (int) Math.ceil(height / cellSize);
+			this.gridX = new int[columns * rows];
+			this.gridY = new int[columns * rows];
+			Arrays.fill(gridX, -1);
+		}
+		
+		/**
+		 * Fill a tile with points. Seeds are the points already within 2 cells of the 
+		 * tile, which may have room for a neighbour inside it, and a new point anywhere
+		 * in the tile in case none reaches it. Candidates outside the tile are turned 
+		 * down, so only the tile's cells are written.
+		 * 
+		 * @param tx Column of the tile.
+		 * @param ty Row of the tile.
+		 * @param rnd Source of random numbers for the tile.
+		 */
+		void fillTile(int tx, int ty, Random rnd) {
+			int column0 = tx * TILE_CELLS;
+			int column1 = Math.min(column0 + TILE_CELLS, columns);
+			int row0 = ty * TILE_CELLS;
+			int row1 = Math.min(row0 + TILE_CELLS, rows);
 			
-			int candidatesTried = 0;
+			//cells of the points that can still be used as seeds
+			int[] active = new int[(column1 - column0 + 4) * (row1 - row0 + 4)];
+			int activeCount = 0;
+			for (int row = Math.max(row0 - 2, 0); row < Math.min(row1 + 2, rows); row++) {
+				for (int column = Math.max(column0 - 2, 0); column < Math.min(column1 + 2, columns); column++) {
+					if (gridX[row * columns + column] >= 0) {
+						active[activeCount++] = row * columns + column;
+					}
+				}
+			}
 			
-			//shortCircuit the loop if a candidate is selected
-			boolean candidateFound = false;
+			int left = (int) Math.ceil(column0 * cellSize);
+			int top = (int) Math.ceil(row0 * cellSize);
+			int right = Math.min(width, (int) Math.ceil(column1 * cellSize));
+			int bottom = Math.min(height, (int) Math.ceil(row1 * cellSize));
+			for (int tried = 0; tried < MAX_CANDIDATES && left < right && top < bottom; tried++) {
+				int cell = place(left + rnd.nextInt(right - left), top + rnd.nextInt(bottom - top), 
+						column0, column1, row0, row1);
+				if (cell >= 0) {
+					active[activeCount++] = cell;
+					break;
+				}
+			}
 			
-			// Try up to 100 candidates before quitting
-			while (candidatesTried < MAX_CANDIDATES && !candidateFound) {
-				//Create candidate within 2 distances of the seed
-				Point candidate = new Point(rnd.nextInt(maxX - minX + 1) + minX, rnd.nextInt(maxY - minY + 1) + minY);
+			//Begin generating points until there are no more active seed points.
+			while (activeCount > 0) {
+				
+				// get an active seed randomly
+				int slot = rnd.nextInt(activeCount);
+				int seed = active[slot];
+				
+				//shortCircuit the loop if a candidate is selected
+				boolean candidateFound = false;
 				
-				// If candidate is within the annulus, consider it an official candidate.
-				// If not, do not count and restart loop.
-				if (seed.distance(candidate) >= minDistance &&
-					seed.distance(candidate) <= minDistance * 2) {
-					
-					// see if there is a neighbor less than minDistance from candidate
-					// use a search zone of minDistance
-					
-					Point closestNeighbor = getClosestNeighbor(candidate, new BoundingBox(candidate.x - minDistance,
-																						  candidate.y - minDistance,
-																						  minDistance * 2,
-																						  minDistance * 2));
-					
-					// candidate is far enough away from other points, add to distribution
-					if (candidate.distance(closestNeighbor) >= minDistance) {
-						insert(candidate);
-						activePoints.add(candidate);
+				for (int tried = 0; tried < MAX_CANDIDATES && !candidateFound; tried++) {
+					//radius from the square root spreads candidates evenly over the ring's area
+					double angle = rnd.nextDouble() * 2 * Math.PI;
+					double radius = distance * Math.sqrt(1 + 3 * rnd.nextDouble());
+					int cx = (int) Math.round(gridX[seed] + radius * Math.cos(angle));
+					int cy = (int) Math.round(gridY[seed] + radius * Math.sin(angle));
+					int cell = place(cx, cy, column0, column1, row0, row1);
+					if (cell >= 0) {
+						active[activeCount++] = cell;
 						candidateFound = true;
-						
-					// candidate is too close to another point, discard 	
-					} else {
-						candidatesTried++;
 					}
 				}
+				
+				// remove seed from the active list if no candidate was found, moving the 
+				// last seed into its place
+				if (!candidateFound) {
+					active[slot] = active[--activeCount];
+				}
 			}
-			
-			// remove seed from the active list if no candidate was found
-			if (!candidateFound) {
-				activePoints.remove(seed);
+		}
+		
+		/**
+		 * Put a candidate in the grid if it lies in a tile and no point is too close.
+		 * 
+		 * @param cx X coordinate of the candidate.
+		 * @param cy Y coordinate of the candidate.
+		 * @param column0 First column of the tile.
+		 * @param column1 Column after the last column of the tile.
+		 * @param row0 First row of the tile.
+		 * @param row1 Row after the last row of the tile.
+		 * @return Cell the candidate was put in, or -1 if it was turned down.
+		 */
+		private int place(int cx, int cy, int column0, int column1, int row0, int row1) {
+			if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+				return -1;
+			}
+			int column = (int) (cx / cellSize);
+			int row = (int) (cy / cellSize);
+			if (column < column0 || column >= column1 || row < row0 || row >= row1 
+					|| !isClear(column, row, cx, cy)) {
+				return -1;
+			}
+			int cell = row * columns + column;
+			gridX[cell] = cx;
+			gridY[cell] = cy;
+			return cell;
+		}
+		
+		/**
+		 * Check that no point in the grid is closer to a candidate than the minimum 
+		 * distance. Cells are the minimum distance over root 2 across, so any point that
+		 * close lies within 2 cells of the candidate's cell, outside the corners.
+		 * 
+		 * @param column Column of the candidate's cell.
+		 * @param row Row of the candidate's cell.
+		 * @param cx X coordinate of the candidate.
+		 * @param cy Y coordinate of the candidate.
+		 * @return True if every point is at least the minimum distance from the candidate.
+		 */
+		private boolean isClear(int column, int row, int cx, int cy) {
+			for (int i = 0; i < NEIGHBOUR_COLUMNS.length; i++) {
+				int c = column + NEIGHBOUR_COLUMNS[i];
+				int r = row + NEIGHBOUR_ROWS[i];
+				if (c < 0 || r < 0 || c >= columns || r >= rows) {
+					continue;
+				}
+				int cell = r * columns + c;
+				if (gridX[cell] >= 0) {
+					long dx = gridX[cell] - cx;
+					long dy = gridY[cell] - cy;
+					if (dx * dx + dy * dy < distanceSq) {
+						return false;
+					}
+				}
 			}
+			return true;
 		}
 	}
 }
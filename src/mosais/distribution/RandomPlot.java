@@ -19,8 +19,10 @@
  */
 package mosais.distribution;
 
-import java.awt.Point;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.model.ParallelBands;
 
 /**
  * A distribution of points that generates all points randomly without adjusting for
@@ -32,7 +34,10 @@ public class RandomPlot extends PlotTree {
 	
 	/** Make sure points will not lie on the edge and break bounding */
 	public static final int EDGE_BUFFER = 1;
-
+	
+	/** Number of points generated from each source of random numbers */
+	private static final int CHUNK_SIZE = 1 << 16;
+	
 	/**
 	 * Create a new random plot with the given number of points within the given dimensions.
 	 * 
@@ -43,22 +48,65 @@ public class RandomPlot extends PlotTree {
 	public RandomPlot(int numPoints, int width, int height) {
 		super(numPoints, width, height);
 	}
-
+	
+	/**
+	 * Create a new random plot with the given number of points within the given dimensions,
+	 * stored in the given type of spatial index.
+	 * 
+	 * @param numPoints Number of points to generate for the plot.
+	 * @param width Width of the area in which to place points.
+	 * @param height Height of the area in which to place points.
+	 * @param indexType Type of spatial index to store the points in.
+	 */
+	public RandomPlot(int numPoints, int width, int height, SpatialIndex.Type indexType) {
+		super(numPoints, width, height, indexType);
+	}
+	
 	/**
-	 * Create a distribution of points that are randomly generated.
+	 * Create a distribution of points that are randomly generated. All points are 
+	 * generated first, then inserted together.
 	 */
 	@Override
 	public void createDistribution() {
-		BoundingBox box = (BoundingBox)this.root.getModel();
-		int maxX = (int)box.getWidth();
-		int maxY = (int)box.getHeight();
-		Random rnd = new Random();							//use a seed for debugging 
-		for (int i = 1; i <= getNumPoints(); i++) {
-			//make sure that points don't fall on outer edges
-			int x = rnd.nextInt(maxX - 1) + EDGE_BUFFER;
-			int y = rnd.nextInt(maxY - 1) + EDGE_BUFFER;
-			insert(new Point(x, y));
+		createDistribution(null);
+	}
+	
+	/**
+	 * Create a distribution of points that are randomly generated, in chunks spread over
+	 * the threads of a pool. Each chunk has its own source of random numbers, seeded in
+	 * turn from the plot's, so the points do not depend on the number of threads. The
+	 * points are then inserted together.
+	 * 
+	 * @param pool Pool to generate in, or null to generate on the calling thread.
+	 */
+	@Override
+	public void createDistribution(ForkJoinPool pool) {
+		final int maxX = getPlotWidth();
+		final int maxY = getPlotHeight();
+		final int count = getNumPoints();
+		final int[] x = new int[count];
+		final int[] y = new int[count];
+		
+		Random rnd = createRandom();
+		final long[] seeds = new long[(count + CHUNK_SIZE - 1) / CHUNK_SIZE];
+		for (int chunk = 0; chunk < seeds.length; chunk++) {
+			seeds[chunk] = rnd.nextLong();
 		}
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int chunk = start; chunk < end; chunk++) {
+					Random chunkRnd = new Random(seeds[chunk]);
+					int last = (int)Math.min(count, (chunk + 1L) * CHUNK_SIZE);
+					for (int i = chunk * CHUNK_SIZE; i < last; i++) {
+						//make sure that points don't fall on outer edges
+						x[i] = chunkRnd.nextInt(maxX - 1) + EDGE_BUFFER;
+						y[i] = chunkRnd.nextInt(maxY - 1) + EDGE_BUFFER;
+					}
+				}
+			}
+		}.invoke(pool, seeds.length);
+		insertAll(x, y, count);
 	}
 
 }
@@ -0,0 +1,202 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.util.Arrays;
+
+/**
+ * The sites of a distribution, stored as arrays of coordinates and optional colors
+ * addressed by site index, rather than as an object per site. Distributions add sites
+ * through their spatial index, and renderers read them from here.
+ * 
+ * A million sites take about 8 MB for their coordinates, against about 40 MB as
+ * java.awt.Point objects in a list, and no site can be moved by code holding a 
+ * reference to it.
+ *
+ * @author Andrew Trismen
+ */
+public class SiteStore {
+	
+	/** Number of sites room is made for when the store is created */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** X coordinate of each site */
+	private int[] x;
+	
+	/** Y coordinate of each site */
+	private int[] y;
+	
+	/** ARGB color of each site, or null if no colors have been set */
+	private int[] color;
+	
+	/** Number of sites in the store */
+	private int size;
+	
+	/**
+	 * Construct an empty store.
+	 */
+	public SiteStore() {
+		x = new int[INITIAL_CAPACITY];
+		y = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * @return Number of sites in the store.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return X coordinate of the site.
+	 */
+	public int getX(int site) {
+		return x[site];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return Y coordinate of the site.
+	 */
+	public int getY(int site) {
+		return y[site];
+	}
+	
+	/**
+	 * Get the array the X coordinates are stored in, for passes over every site. Only
+	 * the first size() entries are sites, and the array is replaced when the store grows.
+	 * 
+	 * @return X coordinate of each site. Must not be modified.
+	 */
+	public int[] getXArray() {
+		return x;
+	}
+	
+	/**
+	 * Get the array the Y coordinates are stored in, for passes over every site. Only
+	 * the first size() entries are sites, and the array is replaced when the store grows.
+	 * 
+	 * @return Y coordinate of each site. Must not be modified.
+	 */
+	public int[] getYArray() {
+		return y;
+	}
+	
+	/**
+	 * @return True if colors have been set for the sites, false otherwise.
+	 */
+	public boolean hasColors() {
+		return color != null;
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return ARGB color of the site, 0 if none has been set.
+	 */
+	public int getColor(int site) {
+		return color == null ? 0 : color[site];
+	}
+	
+	/**
+	 * Set the color of a site. Sites whose color has not been set are transparent black.
+	 * 
+	 * @param site Index of a site.
+	 * @param argb ARGB color of the site.
+	 * @throws IndexOutOfBoundsException if there is no site at the index.
+	 */
+	public void setColor(int site, int argb) {
+		if (site < 0 || site >= size) {
+			throw new IndexOutOfBoundsException("No site at index " + site);
+		}
+		if (color == null) {
+			color = new int[x.length];
+		}
+		color[site] = argb;
+	}
+	
+	/**
+	 * Remove the colors of all sites.
+	 */
+	public void clearColors() {
+		color = null;
+	}
+	
+	/**
+	 * Copy the store, into arrays just large enough for its sites.
+	 * 
+	 * @return A new store holding the same sites and colors.
+	 */
+	SiteStore copy() {
+		SiteStore copy = new SiteStore();
+		copy.x = Arrays.copyOf(x, size);
+		copy.y = Arrays.copyOf(y, size);
+		if (color != null) {
+			copy.color = Arrays.copyOf(color, size);
+		}
+		copy.size = size;
+		return copy;
+	}
+	
+	/**
+	 * Add a site.
+	 * 
+	 * @param siteX X coordinate of the site.
+	 * @param siteY Y coordinate of the site.
+	 * @return Index of the site.
+	 */
+	int add(int siteX, int siteY) {
+		if (size == x.length) {
+			grow(Math.max(size * 2, INITIAL_CAPACITY));
+		}
+		x[size] = siteX;
+		y[size] = siteY;
+		return size++;
+	}
+	
+	/**
+	 * Add many sites, given indexes in the order given.
+	 * 
+	 * @param siteX X coordinates of the sites.
+	 * @param siteY Y coordinates of the sites.
+	 * @param count Number of sites.
+	 */
+	void addAll(int[] siteX, int[] siteY, int count) {
+		if (size + count > x.length) {
+			grow(Math.max(size + count, size * 2));
+		}
+		System.arraycopy(siteX, 0, x, size, count);
+		System.arraycopy(siteY, 0, y, size, count);
+		size += count;
+	}
+	
+	/**
+	 * Make room for more sites.
+	 * 
+	 * @param capacity Number of sites to make room for.
+	 */
+	private void grow(int capacity) {
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		if (color != null) {
+			color = Arrays.copyOf(color, capacity);
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+/**
+ * A store of points with integer coordinates that can be searched by location. Points
+ * are identified by the order they were inserted in. Once all points are inserted, 
+ * the search methods modify nothing and may be called from several threads at once.
+ *
+ * @author Andrew Trismen
+ */
+public interface SpatialIndex {
+	
+	/**
+	 * The available implementations of a spatial index.
+	 */
+	public enum Type {
+		/** A quadtree, splitting the area into equal quarters, see PointQuadtree */
+		QUADTREE, 
+		/** A 2-d tree, splitting the points into equal halves, see KdTree */
+		KD_TREE,
+		/** A grid of equal cells about the size of the point spacing, see GridIndex */
+		GRID,
+		/** A walk of the Delaunay triangulation from a nearby point, see DelaunayIndex */
+		DELAUNAY;
+		
+		/**
+		 * Create an empty index of this type.
+		 * 
+		 * @param width Width of the area covered by the index.
+		 * @param height Height of the area covered by the index.
+		 * @param maxPointsPerNode Maximum number of points to store in a leaf of a tree.
+		 * @param spacing Expected distance between neighbouring points, sizing grid cells.
+		 * @return A new empty index.
+		 */
+		public SpatialIndex create(int width, int height, int maxPointsPerNode, int spacing) {
+			return create(new SiteStore(), width, height, maxPointsPerNode, spacing);
+		}
+		
+		/**
+		 * Create an index of this type over the sites of a store. Sites already in the 
+		 * store are indexed in one go, and points inserted later are added to the store.
+		 * 
+		 * @param sites Store to keep the points in.
+		 * @param width Width of the area covered by the index.
+		 * @param height Height of the area covered by the index.
+		 * @param maxPointsPerNode Maximum number of points to store in a leaf of a tree.
+		 * @param spacing Expected distance between neighbouring points, sizing grid cells.
+		 * @return A new index of the sites.
+		 * @throws IllegalArgumentException if a site lies outside the area.
+		 */
+		public SpatialIndex create(SiteStore sites, int width, int height, int maxPointsPerNode, int spacing) {
+			switch (this) {
+			case KD_TREE:
+				return new KdTree(sites, width, height, maxPointsPerNode);
+			case GRID:
+				return new GridIndex(sites, width, height, Math.max(spacing, 1));
+			case DELAUNAY:
+				return new DelaunayIndex(sites, width, height, maxPointsPerNode);
+			default:
+				return new PointQuadtree(sites, width, height, maxPointsPerNode);
+			}
+		}
+	}
+	
+	/**
+	 * @return The type of this index.
+	 */
+	public Type getType();
+	
+	/**
+	 * @return The store the points are kept in, indexed the same as the points.
+	 */
+	public SiteStore getSites();
+	
+	/**
+	 * @return Number of points in the index.
+	 */
+	public int size();
+	
+	/**
+	 * @param index Index of a point.
+	 * @return X coordinate of the point.
+	 */
+	public int getX(int index);
+	
+	/**
+	 * @param index Index of a point.
+	 * @return Y coordinate of the point.
+	 */
+	public int getY(int index);
+	
+	/**
+	 * Check if a location lies inside the area covered by the index.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return True if the location is inside the area, false otherwise.
+	 */
+	public boolean contains(int x, int y);
+	
+	/**
+	 * Insert a point.
+	 * 
+	 * @param x X coordinate of the point.
+	 * @param y Y coordinate of the point.
+	 * @return Index of the point, which is the number of points inserted before it.
+	 * @throws IllegalArgumentException if the point lies outside the area of the index.
+	 */
+	public int insert(int x, int y);
+	
+	/**
+	 * Insert many points at once. Into an empty index this is much faster than inserting
+	 * the points one at a time, as the index is built in one go rather than grown.
+	 * 
+	 * @param x X coordinates of the points.
+	 * @param y Y coordinates of the points.
+	 * @param count Number of points, which are given indexes in the order given.
+	 * @throws IllegalArgumentException if a point lies outside the area of the index.
+	 */
+	public void load(int[] x, int[] y, int count);
+	
+	/**
+	 * @param index Index of a point.
+	 * @param x X coordinate of a location.
+	 * @param y Y coordinate of a location.
+	 * @return Squared distance from the point to the location.
+	 */
+	public long distanceSq(int index, int x, int y);
+	
+	/**
+	 * Find the point closest to a location, starting from a point known to be nearby.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index of a point to start from, ideally one close to x, y.
+	 * @return Index of the point closest to x, y.
+	 */
+	public int nearest(int x, int y, int start);
+	
+	/**
+	 * Find the point closest to a location, with no point to start from.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return Index of the point closest to x, y, or -1 if the index is empty.
+	 */
+	public int nearest(int x, int y);
+	
+	/**
+	 * Find the point closest to a location, if any is closer than a given distance.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index to return if no point is closer than limit.
+	 * @param limit Squared distance points must be closer than.
+	 * @return Index of the point closest to x, y, or start.
+	 */
+	public int nearest(int x, int y, int start, long limit);
+	
+	/**
+	 * Find a point nearly as close to a location as the closest point, if any is closer
+	 * than a given distance. Parts of the index that could only hold a point less than
+	 * 1 + epsilon times closer than the best point found so far are skipped, so far
+	 * fewer are visited, and the point found is at most 1 + epsilon times as far from 
+	 * the location as the closest point.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param start Index to return if no point is closer than limit.
+	 * @param limit Squared distance points must be closer than.
+	 * @param epsilon Error bound, 0 to find the closest point.
+	 * @return Index of a point at most 1 + epsilon times as far from x, y as the closest 
+	 * point, or start.
+	 * @throws IllegalArgumentException if epsilon is negative.
+	 */
+	public int nearest(int x, int y, int start, long limit, double epsilon);
+	
+	/**
+	 * Find the points closest to a location.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param k Number of points to find.
+	 * @return Indexes of the k points closest to x, y, closest first, or of all points if
+	 * there are fewer than k.
+	 */
+	public int[] kNearest(int x, int y, int k);
+	
+	/**
+	 * Find the points closest to a location without allocating, keeping the points found
+	 * so far in a heap in the given array.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param k Number of points to find.
+	 * @param out Array to write the indexes of the points into, closest first, at least 
+	 * k long or as long as the number of points in the index.
+	 * @return Number of points found, k or all points if there are fewer than k.
+	 * @throws IllegalArgumentException if k is less than 1 or out is too short.
+	 */
+	public int kNearest(int x, int y, int k, int[] out);
+	
+	/**
+	 * Find all points closer to a location than a given distance, the same test as 
+	 * anyWithin, so a point exactly radius away is left out.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param radius Distance points must be closer than.
+	 * @return Indexes of all points closer than radius to x, y, in no particular order.
+	 */
+	public int[] withinRadius(int x, int y, int radius);
+	
+	/**
+	 * Check if any point lies closer to a location than a given distance, stopping at the
+	 * first point found rather than looking for the closest.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @param radius Distance points must be closer than.
+	 * @return True if a point is closer than radius to x, y, false otherwise.
+	 */
+	public boolean anyWithin(int x, int y, int radius);
+}
@@ -0,0 +1,389 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.distribution;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * The Voronoi diagram of a set of sites clipped to a rectangular area: for each site,
+ * the convex polygon of the part of the area closer to it than to any other site. The
+ * cell of a site is cut from the whole area by the perpendicular bisector between it
+ * and each of its neighbours in the Delaunay triangulation, as those are the only
+ * sites whose cells can share an edge with its own. A site at the same location as
+ * another site has an empty cell.
+ *
+ * Filling the cells row by row labels every pixel with its closest site without any
+ * search. Pixel centres are at integer coordinates, so the area runs from -0.5 to
+ * width - 0.5 across. The corners of the cells are rounded to doubles, so each row of
+ * a cell is widened by a tiny margin, and a pixel claimed by two cells goes to the
+ * closer site by exact integer distances, which leaves every pixel with a closest site.
+ *
+ * @author Andrew Trismen
+ */
+public final class VoronoiDiagram {
+	
+	/** Widening of each row of a cell to cover rounding of its corners, in pixels */
+	private static final double MARGIN = 1e-6;
+	
+	/** Width of the area */
+	private final int width;
+	
+	/** Height of the area */
+	private final int height;
+	
+	/** Number of sites */
+	private final int size;
+	
+	/** X coordinate of each site */
+	private final int[] siteX;
+	
+	/** Y coordinate of each site */
+	private final int[] siteY;
+	
+	/** First corner of the cell of each site in the corner arrays, and the end */
+	private final int[] cellStart;
+	
+	/** X coordinate of each corner, cell by cell, in order around the cell */
+	private final double[] cornerX;
+	
+	/** Y coordinate of each corner, cell by cell, in order around the cell */
+	private final double[] cornerY;
+	
+	/** First row of pixels each cell covers */
+	private final int[] top;
+	
+	/** Last row of pixels each cell covers, less than top if it covers none */
+	private final int[] bottom;
+	
+	/**
+	 * Construct a diagram from its cells.
+	 */
+	private VoronoiDiagram(int width, int height, int size, int[] siteX, int[] siteY,
+			int[] cellStart, double[] cornerX, double[] cornerY, int[] top, int[] bottom) {
+		this.width = width;
+		this.height = height;
+		this.size = size;
+		this.siteX = siteX;
+		this.siteY = siteY;
+		this.cellStart = cellStart;
+		this.cornerX = cornerX;
+		this.cornerY = cornerY;
+		this.top = top;
+		this.bottom = bottom;
+	}
+	
+	/**
+	 * Build the Voronoi diagram of the sites of a store, clipped to an area with its top
+	 * left corner at 0, 0. Sites must not be added to the store while the diagram is
+	 * in use.
+	 *
+	 * @param sites Store holding the sites.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @return The diagram of the sites.
+	 * @throws IllegalArgumentException if sites is null or the area is empty.
+	 */
+	public static VoronoiDiagram build(SiteStore sites, int width, int height) {
+		return build(sites, null, width, height);
+	}
+	
+	/**
+	 * Build the Voronoi diagram of the sites of a store from their Delaunay triangulation,
+	 * if it is already known.
+	 *
+	 * @param sites Store holding the sites.
+	 * @param graph Triangulation of the sites, or null to join them here.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @return The diagram of the sites.
+	 * @throws IllegalArgumentException if sites is null or the area is empty.
+	 */
+	static VoronoiDiagram build(SiteStore sites, DelaunayGraph graph, int width, int height) {
+		if (sites == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Size must be positive.");
+		}
+		int count = sites.size();
+		int[] x = sites.getXArray();
+		int[] y = sites.getYArray();
+		if (graph == null) {
+			graph = DelaunayGraph.connect(x, y, count);
+		}
+		if (graph == null) {
+			throw new IllegalStateException("Sites could not be triangulated.");
+		}
+		
+		int[] cellStart = new int[count + 1];
+		double[] cornerX = new double[Math.max(count * 6, 4)];
+		double[] cornerY = new double[cornerX.length];
+		int[] top = new int[count];
+		int[] bottom = new int[count];
+		double[] polygonX = new double[16];
+		double[] polygonY = new double[16];
+		double[] clippedX = new double[16];
+		double[] clippedY = new double[16];
+		for (int site = 0; site < count; site++) {
+			int degree = graph.getDegree(site);
+			int corners = 0;
+			if (graph.getVertex(site) == site) {
+				if (polygonX.length < degree + 5) {
+					polygonX = new double[(degree + 5) * 2];
+					polygonY = new double[polygonX.length];
+					clippedX = new double[polygonX.length];
+					clippedY = new double[polygonX.length];
+				}
+				
+				//start from the whole area around the site, and cut away the half beyond
+				//the bisector with each neighbour
+				double left = -0.5 - x[site];
+				double right = width - 0.5 - x[site];
+				double up = -0.5 - y[site];
+				double down = height - 0.5 - y[site];
+				polygonX[0] = left;
+				polygonY[0] = up;
+				polygonX[1] = right;
+				polygonY[1] = up;
+				polygonX[2] = right;
+				polygonY[2] = down;
+				polygonX[3] = left;
+				polygonY[3] = down;
+				corners = 4;
+				for (int k = 0; k < degree && corners > 0; k++) {
+					int neighbour = graph.getNeighbour(site, k);
+					long a = x[neighbour] - x[site];
+					long b = y[neighbour] - y[site];
+					corners = clip(polygonX, polygonY, corners, a, b, (a * a + b * b) / 2.0, clippedX, clippedY);
+					double[] swap = polygonX;
+					polygonX = clippedX;
+					clippedX = swap;
+					swap = polygonY;
+					polygonY = clippedY;
+					clippedY = swap;
+				}
+				
+				if (cellStart[site] + corners > cornerX.length) {
+					cornerX = Arrays.copyOf(cornerX, (cellStart[site] + corners) * 2);
+					cornerY = Arrays.copyOf(cornerY, cornerX.length);
+				}
+				double minY = Double.POSITIVE_INFINITY;
+				double maxY = Double.NEGATIVE_INFINITY;
+				for (int k = 0; k < corners; k++) {
+					cornerX[cellStart[site] + k] = polygonX[k] + x[site];
+					cornerY[cellStart[site] + k] = polygonY[k] + y[site];
+					minY = Math.min(minY, polygonY[k] + y[site]);
+					maxY = Math.max(maxY, polygonY[k] + y[site]);
+				}
+				top[site] = Math.max(0, (int)Math.ceil(minY - MARGIN));
+				bottom[site] = Math.min(height - 1, (int)Math.floor(maxY + MARGIN));
+			}
+			if (corners == 0) {
+				top[site] = 0;
+				bottom[site] = -1;
+			}
+			cellStart[site + 1] = cellStart[site] + corners;
+		}
+		return new VoronoiDiagram(width, height, count, x, y, cellStart, cornerX, cornerY, top, bottom);
+	}
+	
+	/**
+	 * Cut a convex polygon down to the half plane where a * x + b * y is at most c.
+	 *
+	 * @param inX X coordinate of each corner of the polygon.
+	 * @param inY Y coordinate of each corner of the polygon.
+	 * @param corners Number of corners.
+	 * @param a Weight of x.
+	 * @param b Weight of y.
+	 * @param c Limit of the weighted sum.
+	 * @param outX Set to the X coordinate of each corner of the cut polygon.
+	 * @param outY Set to the Y coordinate of each corner of the cut polygon.
+	 * @return Number of corners of the cut polygon, at most one more than before.
+	 */
+	private static int clip(double[] inX, double[] inY, int corners, double a, double b, double c,
+			double[] outX, double[] outY) {
+		int kept = 0;
+		for (int i = 0; i < corners; i++) {
+			int j = i + 1 == corners ? 0 : i + 1;
+			double over = a * inX[i] + b * inY[i] - c;
+			double nextOver = a * inX[j] + b * inY[j] - c;
+			if (over <= 0) {
+				outX[kept] = inX[i];
+				outY[kept] = inY[i];
+				kept++;
+			}
+			if ((over < 0 && nextOver > 0) || (over > 0 && nextOver < 0)) {
+				double t = over / (over - nextOver);
+				outX[kept] = inX[i] + t * (inX[j] - inX[i]);
+				outY[kept] = inY[i] + t * (inY[j] - inY[i]);
+				kept++;
+			}
+		}
+		return kept;
+	}
+	
+	/**
+	 * @return Number of sites, each with a cell, empty for sites at the location of another.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return Width of the area the cells are clipped to.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return Height of the area the cells are clipped to.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return Number of corners of the cell of the site, 0 if its cell is empty.
+	 */
+	public int getCornerCount(int site) {
+		return cellStart[site + 1] - cellStart[site];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @param k Position of the corner around the cell.
+	 * @return X coordinate of the corner.
+	 */
+	public double getCornerX(int site, int k) {
+		return cornerX[cellStart[site] + k];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @param k Position of the corner around the cell.
+	 * @return Y coordinate of the corner.
+	 */
+	public double getCornerY(int site, int k) {
+		return cornerY[cellStart[site] + k];
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @return Area of the cell of the site, in pixels.
+	 */
+	public double getArea(int site) {
+		double twiceArea = 0;
+		for (int i = cellStart[site], end = cellStart[site + 1]; i < end; i++) {
+			int j = i + 1 == end ? cellStart[site] : i + 1;
+			twiceArea += cornerX[i] * cornerY[j] - cornerX[j] * cornerY[i];
+		}
+		return Math.abs(twiceArea) / 2;
+	}
+	
+	/**
+	 * Get the outline of the cell of a site, for drawing borders between cells.
+	 *
+	 * @param site Index of a site.
+	 * @return A closed path around the cell, or an empty path if the cell is empty.
+	 */
+	public Path2D.Double getOutline(int site) {
+		Path2D.Double outline = new Path2D.Double();
+		for (int i = cellStart[site], end = cellStart[site + 1]; i < end; i++) {
+			if (i == cellStart[site]) {
+				outline.moveTo(cornerX[i], cornerY[i]);
+			} else {
+				outline.lineTo(cornerX[i], cornerY[i]);
+			}
+		}
+		if (getCornerCount(site) > 0) {
+			outline.closePath();
+		}
+		return outline;
+	}
+	
+	/**
+	 * Label a band of rows of pixels with the index of their closest site, by filling
+	 * the span of each cell on each row. Only the rows of the band are written, so
+	 * bands that do not overlap may be filled from several threads at once.
+	 *
+	 * @param y0 First row of the band.
+	 * @param y1 Row after the last row of the band.
+	 * @param labels Labels of the whole area row by row, width wide.
+	 */
+	public void fillRows(int y0, int y1, int[] labels) {
+		Arrays.fill(labels, y0 * width, y1 * width, -1);
+		for (int site = 0; site < size; site++) {
+			int from = Math.max(top[site], y0);
+			int to = Math.min(bottom[site], y1 - 1);
+			int first = cellStart[site];
+			int end = cellStart[site + 1];
+			for (int y = from; y <= to; y++) {
+				//the extent across of the part of the cell within the margin of the row
+				double low = y - MARGIN;
+				double high = y + MARGIN;
+				double left = Double.POSITIVE_INFINITY;
+				double right = Double.NEGATIVE_INFINITY;
+				for (int i = first; i < end; i++) {
+					int j = i + 1 == end ? first : i + 1;
+					double yi = cornerY[i];
+					double yj = cornerY[j];
+					if (yi >= low && yi <= high) {
+						left = Math.min(left, cornerX[i]);
+						right = Math.max(right, cornerX[i]);
+					}
+					if ((yi < low) != (yj < low)) {
+						double x = cornerX[i] + (low - yi) * (cornerX[j] - cornerX[i]) / (yj - yi);
+						left = Math.min(left, x);
+						right = Math.max(right, x);
+					}
+					if ((yi > high) != (yj > high)) {
+						double x = cornerX[i] + (high - yi) * (cornerX[j] - cornerX[i]) / (yj - yi);
+						left = Math.min(left, x);
+						right = Math.max(right, x);
+					}
+				}
+				
+				int x0 = Math.max(0, (int)Math.ceil(left - MARGIN));
+				int x1 = Math.min(width - 1, (int)Math.floor(right + MARGIN));
+				for (int x = x0, i = y * width + x0; x <= x1; x++, i++) {
+					int current = labels[i];
+					if (current < 0 || distanceSq(site, x, y) < distanceSq(current, x, y)) {
+						labels[i] = site;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param site Index of a site.
+	 * @param x X coordinate of a pixel.
+	 * @param y Y coordinate of a pixel.
+	 * @return Squared distance from the site to the pixel.
+	 */
+	private long distanceSq(int site, int x, int y) {
+		long dx = siteX[site] - x;
+		long dy = siteY[site] - y;
+		return dx * dx + dy * dy;
+	}
+}
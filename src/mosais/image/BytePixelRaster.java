@@ -0,0 +1,229 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A raster working directly on the byte array backing an image with interleaved byte
+ * pixels: 3 byte BGR, 4 byte ABGR, 8 bit gray or 8 bit indexed. The bytes of a pixel
+ * are packed into one int as a stored value, lowest address in the lowest byte, and 
+ * each pixel size has its own fill loop.
+ *
+ * @author Andrew Trismen
+ */
+class BytePixelRaster extends PixelRaster {
+	
+	/** The array the image stores its pixels in */
+	private final byte[] data;
+	
+	/** Index in data of the first byte of pixel 0, 0 */
+	private final int offset;
+	
+	/** Distance in data from one row to the next */
+	private final int stride;
+	
+	/** Number of bytes in each pixel */
+	private final int pixelStride;
+	
+	/** Color model of an indexed image, null if pixels are not palette indexes */
+	private final IndexColorModel palette;
+	
+	/** ARGB colors of the palette of an indexed image */
+	private final int[] paletteColors;
+	
+	/**
+	 * Construct a new raster over the backing array of a byte interleaved image.
+	 * 
+	 * @param image Image with a single bank DataBufferByte and component sample model.
+	 */
+	BytePixelRaster(BufferedImage image) {
+		super(image.getWidth(), image.getHeight());
+		WritableRaster raster = image.getRaster();
+		DataBufferByte buffer = (DataBufferByte)raster.getDataBuffer();
+		ComponentSampleModel model = (ComponentSampleModel)raster.getSampleModel();
+		
+		//the bytes of a pixel start at its lowest band offset
+		int firstBand = Integer.MAX_VALUE;
+		for (int bandOffset : model.getBandOffsets()) {
+			firstBand = Math.min(firstBand, bandOffset);
+		}
+		
+		this.data = buffer.getData();
+		this.stride = model.getScanlineStride();
+		this.pixelStride = model.getPixelStride();
+		this.offset = buffer.getOffset() + firstBand
+				- raster.getSampleModelTranslateY() * stride 
+				- raster.getSampleModelTranslateX() * pixelStride;
+		
+		if (image.getColorModel() instanceof IndexColorModel) {
+			this.palette = (IndexColorModel)image.getColorModel();
+			this.paletteColors = new int[palette.getMapSize()];
+			palette.getRGBs(paletteColors);
+		} else {
+			this.palette = null;
+			this.paletteColors = null;
+		}
+	}
+	
+	/**
+	 * Check whether an image can be accessed by a byte raster.
+	 * 
+	 * @param image Image to check.
+	 * @return True if the image stores 1, 3 or 4 interleaved bytes per pixel in one array,
+	 * each byte of a pixel holding a different band.
+	 */
+	static boolean supports(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferByte) 
+				|| raster.getDataBuffer().getNumBanks() != 1
+				|| !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+			return false;
+		}
+		ComponentSampleModel model = (ComponentSampleModel)raster.getSampleModel();
+		int pixelStride = model.getPixelStride();
+		if (model.getNumBands() != pixelStride 
+				|| (pixelStride != 1 && pixelStride != 3 && pixelStride != 4)) {
+			return false;
+		}
+		
+		//the band offsets must be 0 to pixelStride - 1 in some order, so the bytes of a
+		//pixel are exactly the stored value
+		int seen = 0;
+		for (int bandOffset : model.getBandOffsets()) {
+			if (bandOffset < 0 || bandOffset >= pixelStride || (seen & (1 << bandOffset)) != 0) {
+				return false;
+			}
+			seen |= 1 << bandOffset;
+		}
+		return true;
+	}
+	
+	@Override
+	public int getChannels() {
+		return palette == null ? pixelStride : 4;
+	}
+	
+	@Override
+	public int getSample(int x, int y) {
+		int i = offset + y * stride + x * pixelStride;
+		int sample = 0;
+		for (int b = pixelStride - 1; b >= 0; b--) {
+			sample = (sample << 8) | (data[i + b] & 0xff);
+		}
+		return sample;
+	}
+	
+	/**
+	 * Read the colors of a row of pixels. Colors are the stored bytes packed into an int,
+	 * except for indexed images where they are the ARGB palette colors.
+	 */
+	@Override
+	public void readColors(int y, int[] colors) {
+		int d = offset + y * stride;
+		switch (pixelStride) {
+		case 1:
+			if (palette != null) {
+				for (int x = 0; x < width; x++) {
+					colors[x] = paletteColors[data[d + x] & 0xff];
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					colors[x] = data[d + x] & 0xff;
+				}
+			}
+			break;
+		case 3:
+			for (int x = 0; x < width; x++, d += 3) {
+				colors[x] = (data[d] & 0xff) | (data[d + 1] & 0xff) << 8 | (data[d + 2] & 0xff) << 16;
+			}
+			break;
+		default:
+			for (int x = 0; x < width; x++, d += 4) {
+				colors[x] = (data[d] & 0xff) | (data[d + 1] & 0xff) << 8 
+						| (data[d + 2] & 0xff) << 16 | (data[d + 3] & 0xff) << 24;
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Convert a color to a stored value, finding the closest palette entry for indexed
+	 * images.
+	 */
+	@Override
+	public int toSample(int color) {
+		if (palette == null) {
+			return color;
+		}
+		return ((byte[])palette.getDataElements(color, null))[0] & 0xff;
+	}
+	
+	@Override
+	public void fillRun(int y, int start, int end, int sample) {
+		int d = offset + y * stride + start * pixelStride;
+		switch (pixelStride) {
+		case 1:
+			Arrays.fill(data, d, d + end - start, (byte)sample);
+			break;
+		case 3:
+			fillTriple(d, end - start, sample);
+			break;
+		default:
+			fillQuad(d, end - start, sample);
+			break;
+		}
+	}
+	
+	/**
+	 * Fill pixels of an image with three bytes per pixel, such as BGR.
+	 */
+	private void fillTriple(int d, int pixels, int sample) {
+		byte b0 = (byte)sample;
+		byte b1 = (byte)(sample >> 8);
+		byte b2 = (byte)(sample >> 16);
+		for (int end = d + pixels * 3; d < end; d += 3) {
+			data[d] = b0;
+			data[d + 1] = b1;
+			data[d + 2] = b2;
+		}
+	}
+	
+	/**
+	 * Fill pixels of an image with four bytes per pixel, such as ABGR.
+	 */
+	private void fillQuad(int d, int pixels, int sample) {
+		byte b0 = (byte)sample;
+		byte b1 = (byte)(sample >> 8);
+		byte b2 = (byte)(sample >> 16);
+		byte b3 = (byte)(sample >> 24);
+		for (int end = d + pixels * 4; d < end; d += 4) {
+			data[d] = b0;
+			data[d + 1] = b1;
+			data[d + 2] = b2;
+			data[d + 3] = b3;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A raster for image types with no direct access. All pixels are converted to ARGB
+ * ints once when wrapped, and converted back once when finished.
+ *
+ * @author Andrew Trismen
+ */
+class ConvertedPixelRaster extends PixelRaster {
+	
+	/** The image the pixels are written back to */
+	private final BufferedImage image;
+	
+	/** Pixels of the image as ARGB ints, row by row */
+	private final int[] pixels;
+	
+	/**
+	 * Construct a new raster holding a converted copy of the image.
+	 * 
+	 * @param image Image to convert.
+	 */
+	ConvertedPixelRaster(BufferedImage image) {
+		super(image.getWidth(), image.getHeight());
+		this.image = image;
+		this.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	@Override
+	public int getChannels() {
+		return 4;
+	}
+
+	@Override
+	public int getSample(int x, int y) {
+		return pixels[y * width + x];
+	}
+
+	@Override
+	public void readColors(int y, int[] colors) {
+		System.arraycopy(pixels, y * width, colors, 0, width);
+	}
+
+	@Override
+	public void fillRun(int y, int start, int end, int sample) {
+		Arrays.fill(pixels, y * width + start, y * width + end, sample);
+	}
+	
+	@Override
+	public void finish() {
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+	}
+}
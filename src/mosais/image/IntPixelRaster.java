@@ -0,0 +1,84 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A raster working directly on the int array backing an image with packed int pixels.
+ *
+ * @author Andrew Trismen
+ */
+class IntPixelRaster extends PixelRaster {
+	
+	/** The array the image stores its pixels in */
+	private final int[] data;
+	
+	/** Index in data of pixel 0, 0 */
+	private final int offset;
+	
+	/** Distance in data from one row to the next */
+	private final int stride;
+	
+	/** Number of channels in each pixel, 4 if the top byte holds alpha */
+	private final int channels;
+	
+	/**
+	 * Construct a new raster over the backing array of an int packed image.
+	 * 
+	 * @param image Image with a DataBufferInt and single pixel packed sample model.
+	 */
+	IntPixelRaster(BufferedImage image) {
+		super(image.getWidth(), image.getHeight());
+		WritableRaster raster = image.getRaster();
+		DataBufferInt buffer = (DataBufferInt)raster.getDataBuffer();
+		this.data = buffer.getData();
+		this.stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+		this.offset = buffer.getOffset() 
+				- raster.getSampleModelTranslateY() * stride 
+				- raster.getSampleModelTranslateX();
+		this.channels = image.getColorModel().hasAlpha() ? 4 : 3;
+	}
+
+	@Override
+	public int getChannels() {
+		return channels;
+	}
+
+	@Override
+	public int getSample(int x, int y) {
+		return data[offset + y * stride + x];
+	}
+
+	@Override
+	public void readColors(int y, int[] colors) {
+		System.arraycopy(data, offset + y * stride, colors, 0, width);
+	}
+
+	@Override
+	public void fillRun(int y, int start, int end, int sample) {
+		int row = offset + y * stride;
+		Arrays.fill(data, row + start, row + end, sample);
+	}
+}
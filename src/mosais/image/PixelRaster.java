@@ -0,0 +1,151 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Reads and writes the stored pixel values of an image directly, without converting
+ * each pixel through the color model as BufferedImage.getRGB and setRGB do. Values are
+ * in the image's own storage format, so a value read from one pixel can be written to 
+ * another unchanged. Colors can also be read in a form that can be averaged.
+ * 
+ * Images stored as packed ints or interleaved bytes, which covers the types ImageIO 
+ * reads JPEG, PNG, GIF and BMP files into, are accessed in place. Other image types 
+ * are converted once when wrapped and written back once when finished.
+ *
+ * @author Andrew Trismen
+ */
+public abstract class PixelRaster {
+	
+	/** Width of the image */
+	protected final int width;
+	
+	/** Height of the image */
+	protected final int height;
+	
+	/**
+	 * Construct a new raster of the given size.
+	 * 
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 */
+	protected PixelRaster(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Wrap an image with the fastest raster available for its type.
+	 * 
+	 * @param image Image to read and write.
+	 * @return A raster over the pixels of the image.
+	 */
+	public static PixelRaster wrap(BufferedImage image) {
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+			if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+				return new IntPixelRaster(image);
+			}
+			break;
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+		case BufferedImage.TYPE_BYTE_GRAY:
+		case BufferedImage.TYPE_BYTE_INDEXED:
+		case BufferedImage.TYPE_CUSTOM:
+			if (BytePixelRaster.supports(image)) {
+				return new BytePixelRaster(image);
+			}
+			break;
+		default:
+			break;
+		}
+		return new ConvertedPixelRaster(image);
+	}
+	
+	/**
+	 * @return Width of the image.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return Height of the image.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @return Number of 8 bit channels used in the colors read by readColors, starting
+	 * from the lowest byte.
+	 */
+	public abstract int getChannels();
+	
+	/**
+	 * Get the stored value of a pixel.
+	 * 
+	 * @param x X coordinate of the pixel.
+	 * @param y Y coordinate of the pixel.
+	 * @return The value stored for the pixel, in the storage format of this raster.
+	 */
+	public abstract int getSample(int x, int y);
+	
+	/**
+	 * Read the colors of a row of pixels. A color packs up to four 8 bit channels into
+	 * an int, in an order that depends on the raster, so that colors can be averaged one
+	 * channel at a time. For most rasters a color is the stored value itself.
+	 * 
+	 * @param y Row to read.
+	 * @param colors Array at least as long as the row to read the colors into.
+	 */
+	public abstract void readColors(int y, int[] colors);
+	
+	/**
+	 * Convert a color, as read by readColors, to the stored value closest to it.
+	 * 
+	 * @param color Packed channels of the color.
+	 * @return The stored value for the color.
+	 */
+	public int toSample(int color) {
+		return color;
+	}
+	
+	/**
+	 * Set a run of pixels in a row to one stored value. Runs that do not overlap may be
+	 * filled at the same time.
+	 * 
+	 * @param y Row of the run.
+	 * @param start Column of the first pixel of the run.
+	 * @param end Column after the last pixel of the run.
+	 * @param sample Stored value to set, in the storage format of this raster.
+	 */
+	public abstract void fillRun(int y, int start, int end, int sample);
+	
+	/**
+	 * Write any changes not made in place back to the image. 
+	 */
+	public void finish() {
+	}
+}
@@ -0,0 +1,217 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+
+/**
+ * Labels pixels a block at a time. Voronoi cells are convex, so when the four corners 
+ * of a block share the same closest point the whole block does too, and is filled 
+ * without searching. Blocks whose corners disagree straddle a cell edge and are split 
+ * into quarters, searching the plot tree only for new corners, until they are small 
+ * enough to label from a short list of candidate points with the plot's distance kernel.
+ * 
+ * With cells of around a thousand pixels, most pixels lie inside a uniform block and 
+ * only a small fraction are searched. Rows of blocks are labelled in parallel bands.
+ *
+ * @author Andrew Trismen
+ */
+public class BlockCornerEngine implements LabelEngine {
+	
+	/** Default side of the blocks the image is first cut into */
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+	
+	/** Largest side of a block whose corners disagree that is labelled from candidates */
+	public static final int KERNEL_BLOCK_SIZE = 16;
+	
+	/** Side of the blocks the image is first cut into */
+	private int blockSize;
+	
+	/**
+	 * Construct a new block corner engine with the default block size.
+	 */
+	public BlockCornerEngine() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+	
+	/**
+	 * Construct a new block corner engine.
+	 * 
+	 * @param blockSize Side of the blocks the image is first cut into.
+	 * @throws IllegalArgumentException if blockSize is less than 1.
+	 */
+	public BlockCornerEngine(int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1.");
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 */
+	@Override
+	public void label(final PlotTree tree, final int width, final int height, final int[] labels, 
+			ForkJoinPool pool) {
+		
+		int blockRows = (height + blockSize - 1) / blockSize;
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int row = start; row < end; row++) {
+					int y0 = row * blockSize;
+					int y1 = Math.min(y0 + blockSize, height) - 1;
+					int hint = 0;
+					for (int x0 = 0; x0 < width; x0 += blockSize) {
+						int x1 = Math.min(x0 + blockSize, width) - 1;
+						hint = labelBlock(tree, labels, width, x0, y0, x1, y1, hint);
+					}
+				}
+			}
+		}.invoke(pool, blockRows);
+	}
+	
+	/**
+	 * Label a block of pixels, filling it if its corners agree, otherwise splitting it
+	 * into quarters. Blocks of at most 2 by 2 pixels are made entirely of corners.
+	 * 
+	 * @param tree Plot tree holding the distribution.
+	 * @param labels Labels of the whole area, row by row.
+	 * @param width Width of the area.
+	 * @param x0 Left column of the block.
+	 * @param y0 Top row of the block.
+	 * @param x1 Right column of the block, inclusive.
+	 * @param y1 Bottom row of the block, inclusive.
+	 * @param hint Index of a point close to the block to start searching from.
+	 * @return Label of the top right corner of the block, a good hint for the next block.
+	 */
+	private int labelBlock(PlotTree tree, int[] labels, int width, int x0, int y0, int x1, int y1, int hint) {
+		int topLeft = tree.getClosestIndex(x0, y0, hint);
+		int topRight = tree.getClosestIndex(x1, y0, topLeft);
+		int bottomLeft = tree.getClosestIndex(x0, y1, topLeft);
+		int bottomRight = tree.getClosestIndex(x1, y1, bottomLeft);
+		labelBlock(tree, labels, width, x0, y0, x1, y1, topLeft, topRight, bottomLeft, bottomRight);
+		return topRight;
+	}
+	
+	/**
+	 * Label a block of pixels whose corner labels are already known. Blocks of at most
+	 * KERNEL_BLOCK_SIZE across whose corners disagree are handed to PlotTree.labelTile,
+	 * which compares each row against the few points near the block with the distance
+	 * kernel, a whole vector of pixels at a time where the vector kernel is available.
+	 * 
+	 * @param tree Plot tree holding the distribution.
+	 * @param labels Labels of the whole area, row by row.
+	 * @param width Width of the area.
+	 * @param x0 Left column of the block.
+	 * @param y0 Top row of the block.
+	 * @param x1 Right column of the block, inclusive.
+	 * @param y1 Bottom row of the block, inclusive.
+	 * @param topLeft Label of the pixel at x0, y0.
+	 * @param topRight Label of the pixel at x1, y0.
+	 * @param bottomLeft Label of the pixel at x0, y1.
+	 * @param bottomRight Label of the pixel at x1, y1.
+	 */
+	private void labelBlock(PlotTree tree, int[] labels, int width, int x0, int y0, int x1, int y1, 
+			int topLeft, int topRight, int bottomLeft, int bottomRight) {
+		
+		if (topLeft == topRight && topLeft == bottomLeft && topLeft == bottomRight) {
+			for (int y = y0; y <= y1; y++) {
+				Arrays.fill(labels, y * width + x0, y * width + x1 + 1, topLeft);
+			}
+			
+		} else if (x1 - x0 <= 1 && y1 - y0 <= 1) {
+			labels[y0 * width + x0] = topLeft;
+			labels[y0 * width + x1] = topRight;
+			labels[y1 * width + x0] = bottomLeft;
+			labels[y1 * width + x1] = bottomRight;
+			
+		} else if (x1 - x0 < KERNEL_BLOCK_SIZE && y1 - y0 < KERNEL_BLOCK_SIZE) {
+			tree.labelTile(x0, y0, x1, y1, labels, width, topLeft);
+			
+		} else {
+			//split at the middle, searching only for corners of the quarters not yet known
+			int xm = (x0 + x1) >>> 1;
+			int ym = (y0 + y1) >>> 1;
+			int xr = Math.min(xm + 1, x1);
+			int yb = Math.min(ym + 1, y1);
+			int[] corners = {topLeft, topRight, bottomLeft, bottomRight};
+			
+			int center = corner(tree, xm, ym, x0, y0, x1, y1, corners, topLeft);
+			labelBlock(tree, labels, width, x0, y0, xm, ym, 
+					topLeft, 
+					corner(tree, xm, y0, x0, y0, x1, y1, corners, topLeft), 
+					corner(tree, x0, ym, x0, y0, x1, y1, corners, topLeft), 
+					center);
+			if (xm < x1) {
+				int centerRight = corner(tree, xr, ym, x0, y0, x1, y1, corners, center);
+				labelBlock(tree, labels, width, xr, y0, x1, ym, 
+						corner(tree, xr, y0, x0, y0, x1, y1, corners, topRight), 
+						topRight, 
+						centerRight, 
+						corner(tree, x1, ym, x0, y0, x1, y1, corners, topRight));
+				if (ym < y1) {
+					labelBlock(tree, labels, width, xr, yb, x1, y1, 
+							corner(tree, xr, yb, x0, y0, x1, y1, corners, centerRight), 
+							corner(tree, x1, yb, x0, y0, x1, y1, corners, bottomRight), 
+							corner(tree, xr, y1, x0, y0, x1, y1, corners, bottomRight), 
+							bottomRight);
+				}
+			}
+			if (ym < y1) {
+				labelBlock(tree, labels, width, x0, yb, xm, y1, 
+						corner(tree, x0, yb, x0, y0, x1, y1, corners, bottomLeft), 
+						corner(tree, xm, yb, x0, y0, x1, y1, corners, center), 
+						bottomLeft, 
+						corner(tree, xm, y1, x0, y0, x1, y1, corners, bottomLeft));
+			}
+		}
+	}
+	
+	/**
+	 * Get the label of a pixel inside a block, reusing the label of a block corner if 
+	 * the pixel is one, or searching the plot tree otherwise.
+	 * 
+	 * @param tree Plot tree holding the distribution.
+	 * @param x X coordinate of the pixel.
+	 * @param y Y coordinate of the pixel.
+	 * @param x0 Left column of the block.
+	 * @param y0 Top row of the block.
+	 * @param x1 Right column of the block, inclusive.
+	 * @param y1 Bottom row of the block, inclusive.
+	 * @param corners Labels of the top left, top right, bottom left and bottom right corners.
+	 * @param hint Index of a point close to the pixel to start searching from.
+	 * @return Label of the pixel.
+	 */
+	private int corner(PlotTree tree, int x, int y, int x0, int y0, int x1, int y1, int[] corners, int hint) {
+		if (y == y0 || y == y1) {
+			int row = y == y0 ? 0 : 2;
+			if (x == x0) {
+				return corners[row];
+			} else if (x == x1) {
+				return corners[row + 1];
+			}
+		}
+		return tree.getClosestIndex(x, y, hint);
+	}
+}
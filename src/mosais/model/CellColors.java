@@ -0,0 +1,265 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.image.PixelRaster;
+
+/**
+ * Ways of choosing the color each cell of a mosaic is painted with. Colors are returned
+ * as a table of stored values indexed by point, ready to fill a raster with.
+ *
+ * @author Andrew Trismen
+ */
+public class CellColors {
+	
+	/** Number of 8 bit channels packed into a color */
+	private static final int CHANNELS = 4;
+	
+	/** Values accumulated per point: a sum per channel and a pixel count */
+	private static final int STRIDE = CHANNELS + 1;
+	
+	/** Most boxes a disc is built from, larger discs use fewer taller boxes */
+	public static final int MAX_DISC_BOXES = 16;
+	
+	/**
+	 * Color each cell with the pixel under its point.
+	 * 
+	 * @param raster Raster of the image being tesselated.
+	 * @param pointX X coordinate of each point of the distribution.
+	 * @param pointY Y coordinate of each point of the distribution.
+	 * @return Stored value of the color of each point.
+	 */
+	public static int[] sample(PixelRaster raster, int[] pointX, int[] pointY) {
+		int[] samples = new int[pointX.length];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = raster.getSample(pointX[i], pointY[i]);
+		}
+		return samples;
+	}
+	
+	/**
+	 * Color each cell with the average of all pixels in it. The rows are cut into one 
+	 * slice per thread, and the runs of the label map in each slice are streamed once, 
+	 * adding pixel channels into sums kept by that slice alone. The sums of all slices 
+	 * are merged at the end.
+	 * 
+	 * @param raster Raster of the image being tesselated.
+	 * @param map Label map of the tesselation.
+	 * @param pool Pool to run in, or null to run on the calling thread.
+	 * @return Stored value of the average color of each cell.
+	 */
+	public static int[] average(final PixelRaster raster, final LabelMap map, ForkJoinPool pool) {
+		
+		final int height = raster.getHeight();
+		final int points = map.getPointCount();
+		final int slices = pool == null ? 1 : pool.getParallelism();
+		final long[][] sliceSums = new long[slices][];
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int slice = start; slice < end; slice++) {
+					long[] sums = new long[points * STRIDE];
+					addRows(raster, map, (int)((long)slice * height / slices), 
+							(int)((long)(slice + 1) * height / slices), sums);
+					sliceSums[slice] = sums;
+				}
+			}
+		}.invoke(pool, slices);
+		
+		//merge the sums of every slice into the first
+		long[] total = sliceSums[0];
+		for (int t = 1; t < slices; t++) {
+			long[] sums = sliceSums[t];
+			for (int i = 0; i < total.length; i++) {
+				total[i] += sums[i];
+			}
+		}
+		
+		int[] samples = new int[points];
+		long[] sums = new long[STRIDE];
+		for (int p = 0; p < points; p++) {
+			System.arraycopy(total, p * STRIDE, sums, 0, STRIDE);
+			if (sums[CHANNELS] > 0) {
+				samples[p] = raster.toSample(averageOf(sums));
+			}
+		}
+		return samples;
+	}
+	
+	/**
+	 * Add the channels of every pixel in a range of rows to the sums of its cell.
+	 * 
+	 * @param raster Raster of the image being tesselated.
+	 * @param map Label map of the tesselation.
+	 * @param start First row to add.
+	 * @param end Row after the last row to add.
+	 * @param sums Sum of each channel followed by the pixel count, for each point.
+	 */
+	private static void addRows(PixelRaster raster, LabelMap map, int start, int end, long[] sums) {
+		int[] colors = new int[raster.getWidth()];
+		for (int y = start; y < end; y++) {
+			raster.readColors(y, colors);
+			int x = 0;
+			for (int run = map.getRowStart(y), last = map.getRowStart(y + 1); run < last; run++) {
+				int runEnd = map.getRunEnd(run);
+				int s = map.getRunLabel(run) * STRIDE;
+				sums[s + 4] += runEnd - x;
+				
+				//sum the run in locals, touching the cell's sums once per run
+				long c0 = 0;
+				long c1 = 0;
+				long c2 = 0;
+				long c3 = 0;
+				for (; x < runEnd; x++) {
+					int color = colors[x];
+					c0 += color & 0xff;
+					c1 += (color >>> 8) & 0xff;
+					c2 += (color >>> 16) & 0xff;
+					c3 += color >>> 24;
+				}
+				sums[s] += c0;
+				sums[s + 1] += c1;
+				sums[s + 2] += c2;
+				sums[s + 3] += c3;
+			}
+		}
+	}
+	
+	/**
+	 * Color each cell with the average of a square of pixels centered on its point, 
+	 * clipped to the image. Each average is read from a summed area table in constant time.
+	 * 
+	 * @param raster Raster of the image being tesselated.
+	 * @param pointX X coordinate of each point of the distribution.
+	 * @param pointY Y coordinate of each point of the distribution.
+	 * @param radius Distance from the point to the edges of the square.
+	 * @param pool Pool to build the summed area table in, or null to use the calling thread.
+	 * @return Stored value of the average color around each point.
+	 */
+	public static int[] box(PixelRaster raster, int[] pointX, int[] pointY, int radius, 
+			ForkJoinPool pool) {
+		long side = 2L * radius + 1;
+		SummedAreaTable table = new SummedAreaTable(raster, side * side, pool);
+		int[] samples = new int[pointX.length];
+		long[] sums = new long[STRIDE];
+		for (int i = 0; i < samples.length; i++) {
+			int x = pointX[i];
+			int y = pointY[i];
+			Arrays.fill(sums, 0);
+			addBox(table, raster, x - radius, y - radius, x + radius, y + radius, sums);
+			samples[i] = raster.toSample(averageOf(sums));
+		}
+		return samples;
+	}
+	
+	/**
+	 * Color each cell with the average of a disc of pixels centered on its point, clipped
+	 * to the image. The disc is approximated by a stack of at most MAX_DISC_BOXES boxes, 
+	 * each read from a summed area table in constant time.
+	 * 
+	 * @param raster Raster of the image being tesselated.
+	 * @param pointX X coordinate of each point of the distribution.
+	 * @param pointY Y coordinate of each point of the distribution.
+	 * @param radius Radius of the disc.
+	 * @param pool Pool to build the summed area table in, or null to use the calling thread.
+	 * @return Stored value of the average color around each point.
+	 */
+	public static int[] disc(PixelRaster raster, int[] pointX, int[] pointY, int radius, 
+			ForkJoinPool pool) {
+		long side = 2L * radius + 1;
+		SummedAreaTable table = new SummedAreaTable(raster, side * side, pool);
+		
+		//rows covered by each box relative to the center, and the half width of each box
+		int boxes = (int)Math.min(side, MAX_DISC_BOXES);
+		int[] top = new int[boxes];
+		int[] bottom = new int[boxes];
+		int[] halfWidth = new int[boxes];
+		for (int b = 0; b < boxes; b++) {
+			top[b] = (int)(b * side / boxes) - radius;
+			bottom[b] = (int)((b + 1) * side / boxes) - radius - 1;
+			//size each box by the chord halfway between its nearest and farthest rows
+			int nearest = top[b] <= 0 && bottom[b] >= 0 ? 0 : Math.min(Math.abs(top[b]), Math.abs(bottom[b]));
+			int farthest = Math.max(Math.abs(top[b]), Math.abs(bottom[b]));
+			int middle = (nearest + farthest) / 2;
+			halfWidth[b] = (int)Math.sqrt((long)radius * radius - (long)middle * middle);
+		}
+		
+		int[] samples = new int[pointX.length];
+		long[] sums = new long[STRIDE];
+		for (int i = 0; i < samples.length; i++) {
+			int x = pointX[i];
+			int y = pointY[i];
+			Arrays.fill(sums, 0);
+			for (int b = 0; b < boxes; b++) {
+				addBox(table, raster, x - halfWidth[b], y + top[b], x + halfWidth[b], y + bottom[b], sums);
+			}
+			samples[i] = raster.toSample(averageOf(sums));
+		}
+		return samples;
+	}
+	
+	/**
+	 * Add the channel sums and pixel count of a box, clipped to the image, to a running total.
+	 * 
+	 * @param table Summed area table of the image.
+	 * @param raster Raster of the image.
+	 * @param x0 Left column of the box.
+	 * @param y0 Top row of the box.
+	 * @param x1 Right column of the box, inclusive.
+	 * @param y1 Bottom row of the box, inclusive.
+	 * @param sums Sum of each channel followed by the pixel count.
+	 */
+	private static void addBox(SummedAreaTable table, PixelRaster raster, int x0, int y0, int x1, int y1, 
+			long[] sums) {
+		x0 = Math.max(x0, 0);
+		y0 = Math.max(y0, 0);
+		x1 = Math.min(x1, raster.getWidth() - 1);
+		y1 = Math.min(y1, raster.getHeight() - 1);
+		if (x0 > x1 || y0 > y1) {
+			return;
+		}
+		for (int c = 0; c < table.getChannels(); c++) {
+			sums[c] += table.sum(c, x0, y0, x1, y1);
+		}
+		sums[CHANNELS] += (long)(x1 - x0 + 1) * (y1 - y0 + 1);
+	}
+	
+	/**
+	 * Pack the rounded averages of channel sums into a color.
+	 * 
+	 * @param sums Sum of each channel followed by the pixel count.
+	 * @return The average color, or 0 if the count is 0.
+	 */
+	private static int averageOf(long[] sums) {
+		long count = sums[CHANNELS];
+		if (count == 0) {
+			return 0;
+		}
+		int color = 0;
+		for (int c = CHANNELS - 1; c >= 0; c--) {
+			color = (color << 8) | (int)((sums[c] + count / 2) / count);
+		}
+		return color;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+import mosais.distribution.SiteStore;
+
+/**
+ * Labels pixels exactly using a separable Euclidean distance transform that carries the 
+ * label of the closest point along with the distance. A column pass finds the closest 
+ * point in each column for every pixel, then a row pass takes the lower envelope of the 
+ * parabolas those column distances define, following Felzenszwalb and Huttenlocher. 
+ * 
+ * Both passes are linear in the number of pixels whatever the number of points, and 
+ * every pixel gets a point at exactly the closest distance. Columns, then rows, are 
+ * processed in parallel bands.
+ *
+ * @author Andrew Trismen
+ */
+public class DistanceTransformEngine implements LabelEngine {
+	
+	/** Label of a pixel with no point in its column */
+	private static final int NONE = -1;
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 */
+	@Override
+	public void label(PlotTree tree, final int width, final int height, final int[] labels, ForkJoinPool pool) {
+		
+		//seed the labels with the pixels the points lie on
+		Arrays.fill(labels, NONE);
+		SiteStore sites = tree.getSites();
+		int[] siteX = sites.getXArray();
+		int[] siteY = sites.getYArray();
+		for (int i = 0; i < sites.size(); i++) {
+			labels[siteY[i] * width + siteX[i]] = i;
+		}
+		
+		//squared distance from each pixel to the closest point in its column
+		final int[] columnDistance = new int[labels.length];
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				transformColumns(labels, columnDistance, start, end, width, height);
+			}
+		}.invoke(pool, width);
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				int[] rowLabels = new int[width];
+				int[] parabolas = new int[width];
+				double[] boundaries = new double[width + 1];
+				for (int y = start; y < end; y++) {
+					transformRow(labels, columnDistance, rowLabels, parabolas, boundaries, y, width);
+				}
+			}
+		}.invoke(pool, height);
+	}
+	
+	/**
+	 * Replace the seeds of a range of columns with the label of the closest seed in the 
+	 * same column, and record the squared distance to it. The columns are walked a row 
+	 * at a time so memory is read in order.
+	 * 
+	 * @param labels Labels of all pixels, holding seeds on entry.
+	 * @param columnDistance Squared distances to write.
+	 * @param start First column to transform.
+	 * @param end Column after the last one to transform.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 */
+	private void transformColumns(int[] labels, int[] columnDistance, int start, int end, 
+			int width, int height) {
+		
+		//walk down carrying the closest seed above each pixel
+		int[] seedRow = new int[end - start];
+		int[] seedLabel = new int[end - start];
+		Arrays.fill(seedRow, NONE);
+		for (int y = 0; y < height; y++) {
+			for (int x = start, i = y * width + start; x < end; x++, i++) {
+				int column = x - start;
+				if (labels[i] != NONE) {
+					seedRow[column] = y;
+					seedLabel[column] = labels[i];
+				}
+				if (seedRow[column] == NONE) {
+					columnDistance[i] = Integer.MAX_VALUE;
+				} else {
+					int distance = y - seedRow[column];
+					labels[i] = seedLabel[column];
+					columnDistance[i] = distance * distance;
+				}
+			}
+		}
+		
+		//walk up taking the closest seed below where it is closer, seeds have distance 0
+		Arrays.fill(seedRow, NONE);
+		for (int y = height - 1; y >= 0; y--) {
+			for (int x = start, i = y * width + start; x < end; x++, i++) {
+				int column = x - start;
+				if (columnDistance[i] == 0) {
+					seedRow[column] = y;
+					seedLabel[column] = labels[i];
+				} else if (seedRow[column] != NONE) {
+					int distance = seedRow[column] - y;
+					if (distance * distance < columnDistance[i]) {
+						labels[i] = seedLabel[column];
+						columnDistance[i] = distance * distance;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Label each pixel of a row with the closest point, using the lower envelope of the 
+	 * parabolas centered on each column with the column distance as their height.
+	 * 
+	 * @param labels Labels of all pixels, holding column labels on entry.
+	 * @param columnDistance Squared distances to the closest point in each column.
+	 * @param rowLabels Scratch array as long as the row.
+	 * @param parabolas Scratch array as long as the row.
+	 * @param boundaries Scratch array one longer than the row.
+	 * @param y Row to transform.
+	 * @param width Width of the area.
+	 */
+	private void transformRow(int[] labels, int[] columnDistance, int[] rowLabels, int[] parabolas, 
+			double[] boundaries, int y, int width) {
+		
+		int rowStart = y * width;
+		System.arraycopy(labels, rowStart, rowLabels, 0, width);
+		
+		//build the lower envelope from the columns that have a point
+		int count = 0;
+		for (int q = 0; q < width; q++) {
+			if (rowLabels[q] == NONE) {
+				continue;
+			}
+			double boundary = Double.NEGATIVE_INFINITY;
+			while (count > 0) {
+				boundary = intersection(columnDistance, rowStart, parabolas[count - 1], q);
+				if (boundary > boundaries[count - 1]) {
+					break;
+				}
+				count--;
+			}
+			if (count == 0) {
+				boundary = Double.NEGATIVE_INFINITY;
+			}
+			parabolas[count] = q;
+			boundaries[count] = boundary;
+			count++;
+		}
+		
+		//no points anywhere, leave the row unlabelled
+		if (count == 0) {
+			return;
+		}
+		boundaries[count] = Double.POSITIVE_INFINITY;
+		
+		int k = 0;
+		for (int x = 0; x < width; x++) {
+			while (boundaries[k + 1] < x) {
+				k++;
+			}
+			labels[rowStart + x] = rowLabels[parabolas[k]];
+		}
+	}
+	
+	/**
+	 * Find the column where the parabola of column q starts to lie below that of column p.
+	 * 
+	 * @param columnDistance Squared distances to the closest point in each column.
+	 * @param rowStart Index of the first pixel of the row.
+	 * @param p Column of the earlier parabola.
+	 * @param q Column of the later parabola.
+	 * @return The column at which both parabolas are equal.
+	 */
+	private double intersection(int[] columnDistance, int rowStart, int p, int q) {
+		long fp = columnDistance[rowStart + p] + (long)p * p;
+		long fq = columnDistance[rowStart + q] + (long)q * q;
+		return (double)(fq - fp) / (2.0 * (q - p));
+	}
+}
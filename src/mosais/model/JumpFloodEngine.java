@@ -0,0 +1,157 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+import mosais.distribution.SiteStore;
+
+/**
+ * Labels pixels with the Jump Flooding Algorithm. Every distribution point seeds its own
+ * pixel, then each pass lets every pixel adopt the closest point known to the pixels a
+ * fixed step away in the 8 directions, halving the step each pass. About log2 of the 
+ * larger image dimension passes over flat arrays are needed, whatever the number of points.
+ * 
+ * The result is approximate: a small number of pixels near cell edges can end up with a 
+ * point that is not quite the closest. The optional cleanup passes repeat the two 
+ * smallest steps, which corrects nearly all of them.
+ *
+ * @author Andrew Trismen
+ */
+public class JumpFloodEngine implements LabelEngine {
+	
+	/** Label of a pixel no point has reached yet */
+	private static final int NONE = -1;
+	
+	/** Whether to run the cleanup passes after the flood */
+	private boolean cleanup;
+	
+	/**
+	 * Construct a new jump flood engine.
+	 * 
+	 * @param cleanup True to run extra passes that correct most mislabelled pixels.
+	 */
+	public JumpFloodEngine(boolean cleanup) {
+		this.cleanup = cleanup;
+	}
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point, or 
+	 * very nearly closest point.
+	 */
+	@Override
+	public void label(PlotTree tree, final int width, int height, int[] labels, ForkJoinPool pool) {
+		
+		//copy point coordinates into flat arrays for the passes
+		SiteStore sites = tree.getSites();
+		final int[] pointX = Arrays.copyOf(sites.getXArray(), sites.size());
+		final int[] pointY = Arrays.copyOf(sites.getYArray(), sites.size());
+		
+		Arrays.fill(labels, NONE);
+		for (int i = 0; i < pointX.length; i++) {
+			labels[pointY[i] * width + pointX[i]] = i;
+		}
+		
+		int step = Integer.highestOneBit(Math.max(width, height) - 1);
+		if (step < 1) {
+			step = 1;
+		}
+		
+		//passes read one buffer and write the other, so rows can be processed in any order
+		int[] source = labels;
+		int[] target = new int[labels.length];
+		for (; step >= 1; step /= 2) {
+			flood(source, target, pointX, pointY, width, height, step, pool);
+			int[] swap = source;
+			source = target;
+			target = swap;
+		}
+		if (cleanup) {
+			for (step = 2; step >= 1; step /= 2) {
+				flood(source, target, pointX, pointY, width, height, step, pool);
+				int[] swap = source;
+				source = target;
+				target = swap;
+			}
+		}
+		
+		if (source != labels) {
+			System.arraycopy(source, 0, labels, 0, labels.length);
+		}
+	}
+	
+	/**
+	 * Run a single pass of the flood, where every pixel takes the closest point known to
+	 * itself or the 8 pixels one step away.
+	 * 
+	 * @param source Labels after the previous pass.
+	 * @param target Labels to write for this pass.
+	 * @param pointX X coordinates of the points.
+	 * @param pointY Y coordinates of the points.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param step Distance to the pixels checked by this pass.
+	 * @param pool Pool to run the pass in, or null to run on the calling thread.
+	 */
+	private void flood(final int[] source, final int[] target, final int[] pointX, final int[] pointY,
+			final int width, final int height, final int step, ForkJoinPool pool) {
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int y = start; y < end; y++) {
+					for (int x = 0; x < width; x++) {
+						int best = source[y * width + x];
+						long bestDistance = Long.MAX_VALUE;
+						if (best != NONE) {
+							long dx = pointX[best] - x;
+							long dy = pointY[best] - y;
+							bestDistance = dx * dx + dy * dy;
+						}
+						
+						for (int ny = y - step; ny <= y + step; ny += step) {
+							if (ny < 0 || ny >= height) {
+								continue;
+							}
+							for (int nx = x - step; nx <= x + step; nx += step) {
+								if (nx < 0 || nx >= width) {
+									continue;
+								}
+								int candidate = source[ny * width + nx];
+								if (candidate != NONE && candidate != best) {
+									long dx = pointX[candidate] - x;
+									long dy = pointY[candidate] - y;
+									long distance = dx * dx + dy * dy;
+									if (distance < bestDistance) {
+										bestDistance = distance;
+										best = candidate;
+									}
+								}
+							}
+						}
+						target[y * width + x] = best;
+					}
+				}
+			}
+		}.invoke(pool, height);
+	}
+}
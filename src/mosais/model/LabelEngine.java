@@ -0,0 +1,45 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+
+/**
+ * A method of finding the closest distribution point to every pixel of an area. 
+ * Pixels are labelled with the index of their closest point in the distribution 
+ * list, so a tesselation can be colored without searching again.
+ *
+ * @author Andrew Trismen
+ */
+public interface LabelEngine {
+	
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 * 
+	 * @param tree Plot tree holding a complete distribution.
+	 * @param width Width of the area to label.
+	 * @param height Height of the area to label.
+	 * @param labels Array of width * height labels to fill, row by row.
+	 * @param pool Pool to run parallel passes in, or null to run on the calling thread.
+	 */
+	void label(PlotTree tree, int width, int height, int[] labels, ForkJoinPool pool);
+}
@@ -0,0 +1,359 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The closest point of every pixel of a tesselation, stored as runs of equal labels
+ * along each row together with the location of every point. A label map holds 
+ * everything needed to paint a mosaic, so once it is made the same tesselation can be
+ * recolored, or painted onto any number of images of the same size, in one pass over
+ * the runs with no searching.
+ * 
+ * A label map can be saved to a file and loaded again by memory mapping the file, so
+ * the runs of a large map are paged in as they are read rather than copied into memory.
+ *
+ * @author Andrew Trismen
+ */
+public class LabelMap {
+	
+	/** Marks the start of a label map file */
+	public static final int FILE_MAGIC = 0x4D4F534C;
+	
+	/** Version of the file layout */
+	public static final int FILE_VERSION = 1;
+	
+	/** Number of ints in the file header: magic, version, width, height, points, runs */
+	private static final int HEADER_INTS = 6;
+	
+	/** Width of the labelled area */
+	private final int width;
+	
+	/** Height of the labelled area */
+	private final int height;
+	
+	/** X coordinates of the points */
+	private final int[] pointX;
+	
+	/** Y coordinates of the points */
+	private final int[] pointY;
+	
+	/** Index of the first run of each row, plus the total number of runs at the end */
+	private final IntBuffer rowStarts;
+	
+	/** Column after the last pixel of each run */
+	private final IntBuffer runEnds;
+	
+	/** Label of every pixel in each run */
+	private final IntBuffer runLabels;
+	
+	/**
+	 * Construct a label map from its parts.
+	 */
+	private LabelMap(int width, int height, int[] pointX, int[] pointY, 
+			IntBuffer rowStarts, IntBuffer runEnds, IntBuffer runLabels) {
+		this.width = width;
+		this.height = height;
+		this.pointX = pointX;
+		this.pointY = pointY;
+		this.rowStarts = rowStarts;
+		this.runEnds = runEnds;
+		this.runLabels = runLabels;
+	}
+	
+	/**
+	 * Encode the labels of every pixel as runs. Rows are counted, then encoded, in parallel.
+	 * 
+	 * @param labels Label of every pixel, row by row.
+	 * @param width Width of the labelled area.
+	 * @param height Height of the labelled area.
+	 * @param pointX X coordinates of the points the labels refer to.
+	 * @param pointY Y coordinates of the points the labels refer to.
+	 * @param pool Pool to run in, or null to run on the calling thread.
+	 * @return A label map of the labels.
+	 * @throws IllegalArgumentException if the labels do not cover the area.
+	 */
+	public static LabelMap encode(final int[] labels, final int width, int height, 
+			int[] pointX, int[] pointY, ForkJoinPool pool) {
+		if (labels.length != width * height || pointX.length != pointY.length) {
+			throw new IllegalArgumentException("Labels do not match the area.");
+		}
+		
+		//count the runs in each row, then turn the counts into row starts
+		final int[] rowStarts = new int[height + 1];
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int y = start; y < end; y++) {
+					int runs = 1;
+					for (int i = y * width + 1; i < (y + 1) * width; i++) {
+						if (labels[i] != labels[i - 1]) {
+							runs++;
+						}
+					}
+					rowStarts[y + 1] = runs;
+				}
+			}
+		}.invoke(pool, height);
+		for (int y = 0; y < height; y++) {
+			rowStarts[y + 1] += rowStarts[y];
+		}
+		
+		final int[] runEnds = new int[rowStarts[height]];
+		final int[] runLabels = new int[rowStarts[height]];
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int y = start; y < end; y++) {
+					int run = rowStarts[y];
+					int row = y * width;
+					for (int x = 1; x < width; x++) {
+						if (labels[row + x] != labels[row + x - 1]) {
+							runEnds[run] = x;
+							runLabels[run] = labels[row + x - 1];
+							run++;
+						}
+					}
+					runEnds[run] = width;
+					runLabels[run] = labels[row + width - 1];
+				}
+			}
+		}.invoke(pool, height);
+		
+		return new LabelMap(width, height, pointX.clone(), pointY.clone(), 
+				IntBuffer.wrap(rowStarts), IntBuffer.wrap(runEnds), IntBuffer.wrap(runLabels));
+	}
+	
+	/**
+	 * Load a label map saved by save, memory mapping the runs rather than reading them.
+	 * 
+	 * @param file File to load.
+	 * @return The label map stored in the file.
+	 * @throws IOException if the file cannot be read, is not a label map, or is damaged.
+	 */
+	public static LabelMap load(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			IntBuffer ints = buffer.asIntBuffer();
+			if (ints.remaining() < HEADER_INTS || ints.get(0) != FILE_MAGIC || ints.get(1) != FILE_VERSION) {
+				throw new IOException("Not a label map file.");
+			}
+			int width = ints.get(2);
+			int height = ints.get(3);
+			int points = ints.get(4);
+			int runs = ints.get(5);
+			if (width < 0 || height < 0 || points < 0 || runs < 0 
+					|| (long)HEADER_INTS + 2L * points + height + 1 + 2L * runs != ints.remaining()) {
+				throw new IOException("Label map file is damaged.");
+			}
+			
+			int[] pointX = new int[points];
+			int[] pointY = new int[points];
+			ints.position(HEADER_INTS);
+			ints.get(pointX);
+			ints.get(pointY);
+			LabelMap map = new LabelMap(width, height, pointX, pointY, 
+					slice(ints, height + 1), slice(ints, runs), slice(ints, runs));
+			map.check();
+			return map;
+		} finally {
+			//the mapping stays valid after the channel is closed
+			in.close();
+		}
+	}
+	
+	/**
+	 * Check that the parts of a loaded label map fit together, so that reading it can
+	 * never go outside the runs, the points or a row. Every point must lie in the area, 
+	 * each row must start where the previous one ends, and the runs of a row must end 
+	 * further along it each time, the last at the width, labelled with a point.
+	 * 
+	 * @throws IOException if any part is out of range.
+	 */
+	private void check() throws IOException {
+		for (int i = 0; i < pointX.length; i++) {
+			if (pointX[i] < 0 || pointX[i] >= width || pointY[i] < 0 || pointY[i] >= height) {
+				throw new IOException("Label map file is damaged.");
+			}
+		}
+		if (rowStarts.get(0) != 0 || rowStarts.get(height) != runEnds.limit()) {
+			throw new IOException("Label map file is damaged.");
+		}
+		for (int y = 0; y < height; y++) {
+			int first = rowStarts.get(y);
+			int last = rowStarts.get(y + 1);
+			if (last < first) {
+				throw new IOException("Label map file is damaged.");
+			}
+			int x = 0;
+			for (int run = first; run < last; run++) {
+				int end = runEnds.get(run);
+				int label = runLabels.get(run);
+				if (end <= x || end > width || label < 0 || label >= pointX.length) {
+					throw new IOException("Label map file is damaged.");
+				}
+				x = end;
+			}
+			if (x != width) {
+				throw new IOException("Label map file is damaged.");
+			}
+		}
+	}
+	
+	/**
+	 * Take the next count ints of a buffer as a buffer of their own.
+	 * 
+	 * @param ints Buffer positioned at the first int to take.
+	 * @param count Number of ints to take.
+	 * @return A buffer over the ints, indexed from 0.
+	 */
+	private static IntBuffer slice(IntBuffer ints, int count) {
+		IntBuffer slice = ints.slice();
+		slice.limit(count);
+		ints.position(ints.position() + count);
+		return slice;
+	}
+	
+	/**
+	 * Save this label map to a file that load can memory map.
+	 * 
+	 * @param file File to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void save(File file) throws IOException {
+		int runs = getRunCount();
+		long size = 4L * (HEADER_INTS + 2L * pointX.length + height + 1 + 2L * runs);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(size);
+			ByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.put(FILE_MAGIC).put(FILE_VERSION).put(width).put(height).put(pointX.length).put(runs);
+			ints.put(pointX).put(pointY);
+			for (int y = 0; y <= height; y++) {
+				ints.put(rowStarts.get(y));
+			}
+			for (int run = 0; run < runs; run++) {
+				ints.put(runEnds.get(run));
+			}
+			for (int run = 0; run < runs; run++) {
+				ints.put(runLabels.get(run));
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * @return Width of the labelled area.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return Height of the labelled area.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * @return Number of points the labels refer to.
+	 */
+	public int getPointCount() {
+		return pointX.length;
+	}
+	
+	/**
+	 * @return X coordinates of the points, indexed by label. Must not be modified.
+	 */
+	public int[] getPointX() {
+		return pointX;
+	}
+	
+	/**
+	 * @return Y coordinates of the points, indexed by label. Must not be modified.
+	 */
+	public int[] getPointY() {
+		return pointY;
+	}
+	
+	/**
+	 * @return Total number of runs in all rows.
+	 */
+	public int getRunCount() {
+		return rowStarts.get(height);
+	}
+	
+	/**
+	 * Get the index of the first run of a row. The runs of row y are those from 
+	 * getRowStart(y) up to getRowStart(y + 1).
+	 * 
+	 * @param y Row of the area, or the height to get the total number of runs.
+	 * @return Index of the first run of the row.
+	 */
+	public int getRowStart(int y) {
+		return rowStarts.get(y);
+	}
+	
+	/**
+	 * @param run Index of a run.
+	 * @return Column after the last pixel of the run. A run starts where the previous run
+	 * of its row ends, or at column 0.
+	 */
+	public int getRunEnd(int run) {
+		return runEnds.get(run);
+	}
+	
+	/**
+	 * @param run Index of a run.
+	 * @return Label of every pixel in the run.
+	 */
+	public int getRunLabel(int run) {
+		return runLabels.get(run);
+	}
+	
+	/**
+	 * Expand the runs of a row back into one label per pixel.
+	 * 
+	 * @param y Row to expand.
+	 * @param labels Array at least as long as the row to write the labels into.
+	 */
+	public void decodeRow(int y, int[] labels) {
+		int x = 0;
+		for (int run = rowStarts.get(y), last = rowStarts.get(y + 1); run < last; run++) {
+			int end = runEnds.get(run);
+			int label = runLabels.get(run);
+			while (x < end) {
+				labels[x++] = label;
+			}
+		}
+	}
+}
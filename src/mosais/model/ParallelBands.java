@@ -0,0 +1,93 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A unit of work over a range of rows or columns that can be split into bands and
+ * run on a fork/join pool. Subclasses render a single band; the bands of one run 
+ * never overlap, so they can write to shared arrays without locking.
+ *
+ * @author Andrew Trismen
+ */
+public abstract class ParallelBands {
+	
+	/** Number of bands to cut the range into per worker thread, to even out uneven bands */
+	public static final int BANDS_PER_THREAD = 4;
+	
+	/**
+	 * Process a single band of the range.
+	 * 
+	 * @param start First row or column of the band.
+	 * @param end Row or column after the last one in the band.
+	 */
+	protected abstract void run(int start, int end);
+	
+	/**
+	 * Process the whole range 0 to count, split into bands run in the given pool.
+	 * 
+	 * @param pool Pool to run the bands in, or null to run on the calling thread.
+	 * @param count Number of rows or columns in the range.
+	 */
+	public void invoke(ForkJoinPool pool, int count) {
+		if (pool == null || pool.getParallelism() == 1) {
+			run(0, count);
+		} else {
+			int bandSize = Math.max(1, count / (pool.getParallelism() * BANDS_PER_THREAD));
+			pool.invoke(new BandTask(0, count, bandSize));
+		}
+	}
+	
+	/**
+	 * Runs a range of bands, splitting it in half until the bands are small enough
+	 * to run directly.
+	 */
+	private class BandTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** First row or column to process */
+		private final int start;
+		
+		/** Row or column after the last one to process */
+		private final int end;
+		
+		/** Largest number of rows or columns to process without splitting */
+		private final int bandSize;
+		
+		BandTask(int start, int end, int bandSize) {
+			this.start = start;
+			this.end = end;
+			this.bandSize = bandSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= bandSize) {
+				run(start, end);
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new BandTask(start, middle, bandSize), new BandTask(middle, end, bandSize));
+			}
+		}
+	}
+}
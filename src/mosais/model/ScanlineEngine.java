@@ -0,0 +1,258 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+import mosais.distribution.SiteStore;
+
+/**
+ * Labels pixels a row at a time. For each row the points close enough to own part of 
+ * the row are gathered, and the exact span of the row each of them owns is found from 
+ * the lower envelope of their distance parabolas. Each span is then filled in one go,
+ * so the work for a row grows with the number of cells crossing it, not its length.
+ * 
+ * The points considered for a row are those within a band of rows around it. The band
+ * starts as wide as the previous row needed, and is widened whenever some pixel 
+ * of the row is further from its point than the edge of the band, which keeps the 
+ * result exact. Rows are labelled in parallel bands.
+ *
+ * @author Andrew Trismen
+ */
+public class ScanlineEngine implements LabelEngine {
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 */
+	@Override
+	public void label(PlotTree tree, final int width, final int height, final int[] labels, 
+			ForkJoinPool pool) {
+		
+		SiteStore sites = tree.getSites();
+		final int[] pointX = Arrays.copyOf(sites.getXArray(), sites.size());
+		final int[] pointY = Arrays.copyOf(sites.getYArray(), sites.size());
+		
+		//sort the points into rows, rowStart[y] is the first point of row y in byRow
+		final int[] rowStart = new int[height + 1];
+		for (int i = 0; i < pointX.length; i++) {
+			rowStart[pointY[i] + 1]++;
+		}
+		for (int y = 0; y < height; y++) {
+			rowStart[y + 1] += rowStart[y];
+		}
+		final int[] byRow = new int[pointX.length];
+		int[] next = Arrays.copyOf(rowStart, height);
+		for (int i = 0; i < pointX.length; i++) {
+			byRow[next[pointY[i]]++] = i;
+		}
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				new RowLabeller(pointX, pointY, rowStart, byRow, width, height).labelRows(labels, start, end);
+			}
+		}.invoke(pool, height);
+	}
+	
+	/**
+	 * Labels a range of rows, keeping the scratch arrays and band width of one thread.
+	 */
+	private static class RowLabeller {
+		
+		/** X coordinates of the points */
+		private final int[] pointX;
+		
+		/** Y coordinates of the points */
+		private final int[] pointY;
+		
+		/** Index into byRow of the first point of each row */
+		private final int[] rowStart;
+		
+		/** Indexes of the points, sorted by row */
+		private final int[] byRow;
+		
+		/** Width of the area */
+		private final int width;
+		
+		/** Height of the area */
+		private final int height;
+		
+		/** Candidates of the current row, column in the high half and index in the low */
+		private long[] candidates = new long[64];
+		
+		/** Columns of the parabolas in the lower envelope */
+		private int[] envelopeX = new int[64];
+		
+		/** Squared row distance of the parabolas in the lower envelope */
+		private long[] envelopeHeight = new long[64];
+		
+		/** Point index of the parabolas in the lower envelope */
+		private int[] envelopeLabel = new int[64];
+		
+		/** Column where each parabola of the envelope starts to be the lowest */
+		private double[] boundaries = new double[65];
+		
+		/** Number of rows above and below a row to gather points from */
+		private int reach = 1;
+		
+		RowLabeller(int[] pointX, int[] pointY, int[] rowStart, int[] byRow, int width, int height) {
+			this.pointX = pointX;
+			this.pointY = pointY;
+			this.rowStart = rowStart;
+			this.byRow = byRow;
+			this.width = width;
+			this.height = height;
+		}
+		
+		/**
+		 * Label all pixels in a range of rows.
+		 * 
+		 * @param labels Labels of the whole area, row by row.
+		 * @param start First row to label.
+		 * @param end Row after the last row to label.
+		 */
+		void labelRows(int[] labels, int start, int end) {
+			for (int y = start; y < end; y++) {
+				while (true) {
+					long farthest = labelRow(labels, y);
+					
+					//every point outside the band is further than reach from every pixel
+					if (farthest >= 0 && farthest <= (long)reach * reach) {
+						//the next row likely needs about as much reach as this row used
+						reach = Math.max(1, (int)Math.ceil(Math.sqrt(farthest)));
+						break;
+					}
+					reach = farthest < 0 ? reach * 2 : (int)Math.ceil(Math.sqrt(farthest));
+				}
+			}
+		}
+		
+		/**
+		 * Label a row from the points in the band around it.
+		 * 
+		 * @param labels Labels of the whole area, row by row.
+		 * @param y Row to label.
+		 * @return Largest squared distance from a pixel in the row to its point, or -1 if 
+		 * the band contains no points.
+		 */
+		private long labelRow(int[] labels, int y) {
+			int count = gatherCandidates(y);
+			if (count == 0) {
+				return reach >= height ? 0 : -1;
+			}
+			int parabolas = buildEnvelope(y, count);
+			
+			//fill the span of each parabola and measure its furthest pixel
+			long farthest = 0;
+			int rowOffset = y * width;
+			int x = 0;
+			for (int k = 0; k < parabolas && x < width; k++) {
+				int last = boundaries[k + 1] >= width - 1 ? width - 1 : (int)Math.floor(boundaries[k + 1]);
+				if (last < x) {
+					continue;
+				}
+				Arrays.fill(labels, rowOffset + x, rowOffset + last + 1, envelopeLabel[k]);
+				long left = x - envelopeX[k];
+				long right = last - envelopeX[k];
+				farthest = Math.max(farthest, Math.max(left * left, right * right) + envelopeHeight[k]);
+				x = last + 1;
+			}
+			return farthest;
+		}
+		
+		/**
+		 * Gather the points within reach of a row, sorted by column.
+		 * 
+		 * @param y Row to gather points for.
+		 * @return Number of candidates gathered.
+		 */
+		private int gatherCandidates(int y) {
+			int first = rowStart[Math.max(0, y - reach)];
+			int last = rowStart[Math.min(height, y + reach + 1)];
+			int count = last - first;
+			if (candidates.length < count) {
+				candidates = new long[Math.max(count, candidates.length * 2)];
+			}
+			for (int i = 0; i < count; i++) {
+				int index = byRow[first + i];
+				candidates[i] = ((long)pointX[index] << 32) | index;
+			}
+			Arrays.sort(candidates, 0, count);
+			return count;
+		}
+		
+		/**
+		 * Build the lower envelope of the distance parabolas of the candidates, keeping only
+		 * the closest candidate of each column. 
+		 * 
+		 * @param y Row the envelope is for.
+		 * @param count Number of candidates.
+		 * @return Number of parabolas in the envelope.
+		 */
+		private int buildEnvelope(int y, int count) {
+			if (envelopeX.length < count) {
+				int size = Math.max(count, envelopeX.length * 2);
+				envelopeX = new int[size];
+				envelopeHeight = new long[size];
+				envelopeLabel = new int[size];
+				boundaries = new double[size + 1];
+			}
+			
+			int parabolas = 0;
+			for (int i = 0; i < count; i++) {
+				int index = (int)candidates[i];
+				int q = pointX[index];
+				long dy = pointY[index] - y;
+				long height = dy * dy;
+				
+				//same column as the last parabola, keep whichever is closer to the row
+				if (parabolas > 0 && envelopeX[parabolas - 1] == q) {
+					if (height >= envelopeHeight[parabolas - 1]) {
+						continue;
+					}
+					parabolas--;
+				}
+				
+				double boundary = Double.NEGATIVE_INFINITY;
+				while (parabolas > 0) {
+					int p = envelopeX[parabolas - 1];
+					boundary = ((height + (long)q * q) - (envelopeHeight[parabolas - 1] + (long)p * p)) 
+							/ (2.0 * (q - p));
+					if (boundary > boundaries[parabolas - 1]) {
+						break;
+					}
+					parabolas--;
+				}
+				if (parabolas == 0) {
+					boundary = Double.NEGATIVE_INFINITY;
+				}
+				envelopeX[parabolas] = q;
+				envelopeHeight[parabolas] = height;
+				envelopeLabel[parabolas] = index;
+				boundaries[parabolas] = boundary;
+				parabolas++;
+			}
+			boundaries[parabolas] = Double.POSITIVE_INFINITY;
+			return parabolas;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.image.PixelRaster;
+
+/**
+ * A summed area table of every color channel of an image. Each entry holds the sum of 
+ * all pixels above and to the left of it, so the sum over any box of pixels takes four
+ * lookups whatever the size of the box.
+ * 
+ * Sums are stored as ints when every box that will be asked for fits in 32 bits, and
+ * as longs otherwise. Int entries are allowed to wrap around, since the difference of 
+ * wrapped sums is still exact for a box whose own sum fits.
+ *
+ * @author Andrew Trismen
+ */
+public class SummedAreaTable {
+	
+	/** Largest box area whose sum of 8 bit values is sure to fit in 32 unsigned bits */
+	public static final long MAX_INT_BOX_AREA = 0xFFFFFFFFL / 255;
+	
+	/** Width of the image */
+	private final int width;
+	
+	/** Height of the image */
+	private final int height;
+	
+	/** Number of color channels summed */
+	private final int channels;
+	
+	/** Int sums of each channel, null if sums are stored as longs */
+	private final int[][] intSums;
+	
+	/** Long sums of each channel, null if sums are stored as ints */
+	private final long[][] longSums;
+	
+	/**
+	 * Build the summed area table of an image. Rows are summed in parallel, then columns.
+	 * 
+	 * @param raster Raster of the image to sum.
+	 * @param maxBoxArea Area of the largest box whose sum will be asked for.
+	 * @param pool Pool to run in, or null to run on the calling thread.
+	 */
+	public SummedAreaTable(final PixelRaster raster, long maxBoxArea, ForkJoinPool pool) {
+		this.width = raster.getWidth();
+		this.height = raster.getHeight();
+		this.channels = raster.getChannels();
+		
+		//one extra row and column of zeros, so boxes touching the edges need no checks
+		int size = (width + 1) * (height + 1);
+		if (Math.min(maxBoxArea, (long)width * height) <= MAX_INT_BOX_AREA) {
+			intSums = new int[channels][size];
+			longSums = null;
+		} else {
+			intSums = null;
+			longSums = new long[channels][size];
+		}
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				int[] colors = new int[width];
+				for (int y = start; y < end; y++) {
+					raster.readColors(y, colors);
+					sumRow(colors, y);
+				}
+			}
+		}.invoke(pool, height);
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				sumColumns(start + 1, end + 1);
+			}
+		}.invoke(pool, width);
+	}
+	
+	/**
+	 * Fill a row of the table with the running sums of a row of pixels.
+	 * 
+	 * @param colors Colors of the row of pixels.
+	 * @param y Row of the image.
+	 */
+	private void sumRow(int[] colors, int y) {
+		int row = (y + 1) * (width + 1) + 1;
+		for (int c = 0, shift = 0; c < channels; c++, shift += 8) {
+			if (intSums != null) {
+				int[] sums = intSums[c];
+				int sum = 0;
+				for (int x = 0; x < width; x++) {
+					sum += (colors[x] >>> shift) & 0xff;
+					sums[row + x] = sum;
+				}
+			} else {
+				long[] sums = longSums[c];
+				long sum = 0;
+				for (int x = 0; x < width; x++) {
+					sum += (colors[x] >>> shift) & 0xff;
+					sums[row + x] = sum;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add each entry of a range of columns to the entry below it, turning row sums into
+	 * box sums. Rows are walked in order so memory is read in order.
+	 * 
+	 * @param start First table column to sum.
+	 * @param end Table column after the last one to sum.
+	 */
+	private void sumColumns(int start, int end) {
+		int stride = width + 1;
+		for (int c = 0; c < channels; c++) {
+			for (int y = 2; y <= height; y++) {
+				int row = y * stride;
+				if (intSums != null) {
+					int[] sums = intSums[c];
+					for (int x = start; x < end; x++) {
+						sums[row + x] += sums[row - stride + x];
+					}
+				} else {
+					long[] sums = longSums[c];
+					for (int x = start; x < end; x++) {
+						sums[row + x] += sums[row - stride + x];
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of color channels summed.
+	 */
+	public int getChannels() {
+		return channels;
+	}
+	
+	/**
+	 * Get the sum of one channel over a box of pixels. The box must lie within the image.
+	 * 
+	 * @param channel Channel to sum.
+	 * @param x0 Left column of the box.
+	 * @param y0 Top row of the box.
+	 * @param x1 Right column of the box, inclusive.
+	 * @param y1 Bottom row of the box, inclusive.
+	 * @return Sum of the channel over every pixel in the box.
+	 */
+	public long sum(int channel, int x0, int y0, int x1, int y1) {
+		int stride = width + 1;
+		int topLeft = y0 * stride + x0;
+		int topRight = y0 * stride + x1 + 1;
+		int bottomLeft = (y1 + 1) * stride + x0;
+		int bottomRight = (y1 + 1) * stride + x1 + 1;
+		if (intSums != null) {
+			int[] sums = intSums[channel];
+			return (sums[bottomRight] - sums[bottomLeft] - sums[topRight] + sums[topLeft]) & 0xFFFFFFFFL;
+		}
+		long[] sums = longSums[channel];
+		return sums[bottomRight] - sums[bottomLeft] - sums[topRight] + sums[topLeft];
+	}
+}
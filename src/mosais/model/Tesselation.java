@@ -19,12 +19,14 @@
  */
 package mosais.model;
 
-import java.awt.Point;
 import java.awt.image.BufferedImage;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
-import mosais.distribution.BoundingBox;
 import mosais.distribution.PlotTree;
+import mosais.distribution.SiteStore;
+import mosais.distribution.SpatialIndex;
+import mosais.image.PixelRaster;
 
 /**
  * This class models the generation of a tessalation by coordinating the generation
@@ -35,12 +37,47 @@ import mosais.distribution.PlotTree;
  */
 public class Tesselation {
 	
+	/**
+	 * Ways of choosing the color of each cell of the mosaic.
+	 */
+	public enum ColorMode {
+		/** The color of the pixel under the cell's point */
+		SAMPLE, 
+		/** The average color of all pixels in the cell */
+		AVERAGE,
+		/** The average color of a square around the cell's point */
+		BOX,
+		/** The average color of a disc around the cell's point */
+		DISC
+	}
+	
+	/** Default distance from a point to the edge of the area averaged in BOX and DISC modes */
+	public static final int DEFAULT_SAMPLE_RADIUS = 3;
+	
 	/** The image to be modified */
 	private BufferedImage image;
 	
 	/** The quadtree backed data structure storing the distribution */
 	private PlotTree tree;
 	
+	/** Number of threads used to render the mosaic, 1 renders on the calling thread */
+	private int parallelism;
+	
+	/** Pool the mosaic bands are rendered in, created on first parallel run */
+	private ForkJoinPool pool;
+	
+	/** Engine labelling pixels with their closest point */
+	private LabelEngine engine = new TileEngine();
+	
+	/** How the color of each cell is chosen */
+	private ColorMode colorMode = ColorMode.SAMPLE;
+	
+	/** Distance from a point to the edge of the area averaged in BOX and DISC modes */
+	private int sampleRadius = DEFAULT_SAMPLE_RADIUS;
+	
+	/** Closest point of every pixel, made by the first mosaic and reused until labelling changes */
+	private LabelMap labelMap;
+	
 	/**
 	 * Construct a new tesselation to modify the given image using the given plot tree.
 	 * 
@@ -55,90 +92,311 @@ public class Tesselation {
 		
 		this.image = image;
 		this.tree = tree;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Set the number of threads used to render the mosaic. The image is split into 
+	 * horizontal bands which are rendered independently.
+	 * 
+	 * @param parallelism Number of render threads, 1 to render on the calling thread.
+	 * @throws IllegalArgumentException if parallelism is less than 1.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		if (parallelism != this.parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Set the engine used to find the closest distribution point of every pixel. Any
+	 * label map held is dropped, so the next mosaic labels the pixels again.
+	 * 
+	 * @param engine Engine to label the pixels with.
+	 * @throws IllegalArgumentException if engine is null.
+	 */
+	public void setEngine(LabelEngine engine) {
+		if (engine == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		this.engine = engine;
+		labelMap = null;
+	}
+	
+	/**
+	 * Set the type of spatial index the distribution is searched with. Points already
+	 * in the distribution are moved into the new index, and any label map held is dropped.
+	 * 
+	 * @param indexType Type of spatial index to store the points in.
+	 * @throws IllegalArgumentException if indexType is null.
+	 * @throws IllegalStateException if the distribution has been frozen by labelling it.
+	 */
+	public void setIndexType(SpatialIndex.Type indexType) {
+		tree.setIndexType(indexType);
+		labelMap = null;
+	}
+	
+	/**
+	 * Set how far from exact the closest point searches may be, for quicker previews. 
+	 * With an error bound of epsilon, a pixel may be given a point up to 1 + epsilon 
+	 * times as far away as its closest point. The tile engine always labels exactly, 
+	 * so this applies to engines searching the tree per pixel. Any label map held is 
+	 * dropped.
+	 * 
+	 * @param epsilon Error bound, 0 to label exactly.
+	 * @throws IllegalArgumentException if epsilon is negative.
+	 */
+	public void setEpsilon(double epsilon) {
+		tree.setEpsilon(epsilon);
+		labelMap = null;
 	}
 	
 	/**
-	 * Generate the distribution of points in an area the size of the image.
+	 * Set how the color of each cell of the mosaic is chosen.
+	 * 
+	 * @param colorMode Mode to color cells with.
+	 * @throws IllegalArgumentException if colorMode is null.
+	 */
+	public void setColorMode(ColorMode colorMode) {
+		if (colorMode == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		this.colorMode = colorMode;
+	}
+	
+	/**
+	 * Set the size of the area around each point averaged in the BOX and DISC color modes.
+	 * 
+	 * @param sampleRadius Distance from the point to the edge of the area, 0 for a single pixel.
+	 * @throws IllegalArgumentException if sampleRadius is negative.
+	 */
+	public void setSampleRadius(int sampleRadius) {
+		if (sampleRadius < 0) {
+			throw new IllegalArgumentException("Radius cannot be negative.");
+		}
+		this.sampleRadius = sampleRadius;
+	}
+	
+	/**
+	 * Generate the distribution of points in an area the size of the image, on the 
+	 * render threads where the distribution can be split up.
 	 */
 	public void createDistribution() {
-		tree.createDistribution();
+		tree.createDistribution(getPool());
 	}
 	
 	/** 
-	 * Draw the points generated in the distribution.
+	 * Draw the points generated in the distribution. Points whose site has been given
+	 * a color are drawn in that color instead.
 	 * 
 	 * @param rgb The RGB color to draw the pixels.
 	 */
 	public void drawPoints(int rgb) {
-		List<Point> pointList = tree.getDistributionAsList();
-		for (Point p : pointList) {
-			image.setRGB(p.x, p.y, rgb);
+		SiteStore sites = tree.getSites();
+		for (int i = 0; i < sites.size(); i++) {
+			image.setRGB(sites.getX(i), sites.getY(i), sites.hasColors() ? sites.getColor(i) : rgb);
 		}
 	}
 	
 	/**
-	 * Create a mosaic pattern in the image by setting all pixels in the image to the 
-	 * same color as the closest distribution point.
+	 * Draw the borders between cells, on the pixels whose right or lower neighbour
+	 * belongs to another cell. Uses the label map, making one if none is held.
+	 *
+	 * @param rgb The RGB color to draw the borders.
 	 */
-	public void applyMosaic() {
-		
+	public void drawBorders(int rgb) {
+		LabelMap map = labelMap != null ? labelMap : createLabelMap();
+		int w = map.getWidth();
+		int[] row = new int[w];
+		int[] below = new int[w];
+		map.decodeRow(0, row);
+		for (int y = 0; y < map.getHeight(); y++) {
+			boolean last = y == map.getHeight() - 1;
+			if (!last) {
+				map.decodeRow(y + 1, below);
+			}
+			for (int x = 0; x < w; x++) {
+				if ((x + 1 < w && row[x] != row[x + 1]) || (!last && row[x] != below[x])) {
+					image.setRGB(x, y, rgb);
+				}
+			}
+			int[] swap = row;
+			row = below;
+			below = swap;
+		}
+	}
+	
+	/**
+	 * Label every pixel of the image with its closest distribution point using the 
+	 * selected engine, and keep the labels for the mosaics that follow. The distribution
+	 * is frozen first, so the render threads can search it together.
+	 * 
+	 * @return The label map of the distribution.
+	 */
+	public LabelMap createLabelMap() {
 		int w = image.getWidth();
 		int h = image.getHeight();
+		ForkJoinPool pool = getPool();
 		
-		//get array of all pixels
-		int[] pixels = null;
-		pixels = image.getRGB(0, 0, w, h, null, 0, w);
+		tree.freeze();
+		int[] labels = new int[w * h];
+		engine.label(tree, w, h, labels, pool);
 		
-		//for tracking coords of current pixel
-		int x = 0;
-		int y = 0;
-		
-		// To accelerate search, cache closest neighbor found on previous run, 
-		// start searching from there
-		Point previousNeighbor = null;
+		SiteStore sites = tree.getSites();
+		int[] pointX = Arrays.copyOf(sites.getXArray(), sites.size());
+		int[] pointY = Arrays.copyOf(sites.getYArray(), sites.size());
+		labelMap = LabelMap.encode(labels, w, h, pointX, pointY, pool);
+		return labelMap;
+	}
+	
+	/**
+	 * Use a label map made earlier, possibly loaded from a file, instead of labelling
+	 * the distribution again.
+	 * 
+	 * @param labelMap Label map covering the image.
+	 * @throws IllegalArgumentException if labelMap is null or not the size of the image.
+	 */
+	public void setLabelMap(LabelMap labelMap) {
+		if (labelMap == null) {
+			throw new IllegalArgumentException("Input cannot be null.");
+		}
+		if (labelMap.getWidth() != image.getWidth() || labelMap.getHeight() != image.getHeight()) {
+			throw new IllegalArgumentException("Label map is not the size of the image.");
+		}
+		this.labelMap = labelMap;
+	}
+	
+	/**
+	 * @return The label map used by the last mosaic, or null if none has been made.
+	 */
+	public LabelMap getLabelMap() {
+		return labelMap;
+	}
+	
+	/**
+	 * Count the pixels that differ from an exact labelling, that is, pixels given a
+	 * point further away than their closest point, which may happen when searches have
+	 * an error bound. The image is labelled again exactly to compare against, so this 
+	 * costs about as much as making the label map.
+	 * 
+	 * @return Number of pixels not labelled with a closest point.
+	 */
+	public int countInexactPixels() {
+		LabelMap map = labelMap != null ? labelMap : createLabelMap();
+		int w = map.getWidth();
+		int h = map.getHeight();
+		int[] exact = new int[w * h];
+		new TileEngine().label(tree, w, h, exact, getPool());
 		
-		for (int i = 0; i < pixels.length; i++) {
-
-			//skip if the pixel is a plot point
-			if (previousNeighbor == null || !(x == previousNeighbor.x && y == previousNeighbor.y)) {
-				
-				//Start search from previous closest neighbor
-				BoundingBox searchZone = null;
-				if (previousNeighbor != null) {
-					double zoneDimension = 2 * (previousNeighbor.distance(x, y));
-					searchZone = new BoundingBox(x - zoneDimension / 2, 
-							y - zoneDimension / 2, 
-							zoneDimension,
-							zoneDimension);	
+		int[] pointX = map.getPointX();
+		int[] pointY = map.getPointY();
+		int[] row = new int[w];
+		int count = 0;
+		for (int y = 0; y < h; y++) {
+			map.decodeRow(y, row);
+			for (int x = 0, i = y * w; x < w; x++, i++) {
+				if (row[x] != exact[i] && distanceSq(pointX, pointY, row[x], x, y) 
+						!= distanceSq(pointX, pointY, exact[i], x, y)) {
+					count++;
 				}
-				
-				//find the closest distribution point
-				Point closest = tree.getClosestNeighbor(new Point(x, y), searchZone);
-				// cache for next search
-				previousNeighbor = closest;
-				//get the color of that pixel and set the current pixel to that color
-				pixels[i] = image.getRGB(closest.x, closest.y);
-			}
-			
-			//update x & y
-			x++;
-
-			if (x == w) {
-				x = 0;
-				y++;
 			}
 		}
+		return count;
+	}
+	
+	/**
+	 * @param pointX X coordinate of each point.
+	 * @param pointY Y coordinate of each point.
+	 * @param point Index of a point.
+	 * @param x X coordinate of a pixel.
+	 * @param y Y coordinate of a pixel.
+	 * @return Squared distance from the point to the pixel.
+	 */
+	private static long distanceSq(int[] pointX, int[] pointY, int point, int x, int y) {
+		long dx = pointX[point] - x;
+		long dy = pointY[point] - y;
+		return dx * dx + dy * dy;
+	}
+	
+	/**
+	 * Create a mosaic pattern in the image by setting all pixels in the image to the 
+	 * same color as the closest distribution point.
+	 * 
+	 * Every pixel is first labelled with its closest point by the selected engine, unless
+	 * a label map is already held, then the color of each cell is worked out once, from 
+	 * the label map without searching again, and copied run by run straight into the 
+	 * image's own pixel storage.
+	 */
+	public void applyMosaic() {
+		
+		final LabelMap map = labelMap != null ? labelMap : createLabelMap();
+		ForkJoinPool pool = getPool();
 		
-		image.setRGB(0, 0, w, h, pixels, 0, w);
+		//look up the color of every cell before any pixel is overwritten
+		final PixelRaster raster = PixelRaster.wrap(image);
+		int[] pointX = map.getPointX();
+		int[] pointY = map.getPointY();
+		final int[] colors;
+		switch (colorMode) {
+		case AVERAGE:
+			colors = CellColors.average(raster, map, pool);
+			break;
+		case BOX:
+			colors = CellColors.box(raster, pointX, pointY, sampleRadius, pool);
+			break;
+		case DISC:
+			colors = CellColors.disc(raster, pointX, pointY, sampleRadius, pool);
+			break;
+		default:
+			colors = CellColors.sample(raster, pointX, pointY);
+			break;
+		}
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int y = start; y < end; y++) {
+					int x = 0;
+					for (int run = map.getRowStart(y), last = map.getRowStart(y + 1); run < last; run++) {
+						int runEnd = map.getRunEnd(run);
+						raster.fillRun(y, x, runEnd, colors[map.getRunLabel(run)]);
+						x = runEnd;
+					}
+				}
+			}
+		}.invoke(pool, map.getHeight());
+		raster.finish();
 	}
-
+	
+	/**
+	 * Get the pool to render in, creating it if needed.
+	 * 
+	 * @return Pool of render threads, or null if rendering on the calling thread.
+	 */
+	private ForkJoinPool getPool() {
+		if (parallelism > 1 && pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+	
 	/**
 	 * To run after completing a run of processing. Nulls references to the 
 	 * data structures to save space and prepare for another run.
 	 */
 	public void cleanUp() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
 		tree.cleanUp();
 		tree = null;
 		image = null;
+		labelMap = null;
 	}
 }
@@ -0,0 +1,85 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+
+/**
+ * Labels pixels a tile at a time. For each tile the plot tree finds the few points 
+ * that could be closest to any of its pixels, then each pixel is labelled by comparing
+ * only those, so the tree is searched a handful of times per tile rather than once 
+ * per pixel. Rows of tiles are labelled in parallel bands.
+ *
+ * @author Andrew Trismen
+ */
+public class TileEngine implements LabelEngine {
+	
+	/** Default side of the tiles the image is cut into */
+	public static final int DEFAULT_TILE_SIZE = 32;
+	
+	/** Side of the tiles the image is cut into */
+	private int tileSize;
+	
+	/**
+	 * Construct a new tile engine with the default tile size.
+	 */
+	public TileEngine() {
+		this(DEFAULT_TILE_SIZE);
+	}
+	
+	/**
+	 * Construct a new tile engine.
+	 * 
+	 * @param tileSize Side of the tiles the image is cut into.
+	 * @throws IllegalArgumentException if tileSize is less than 1.
+	 */
+	public TileEngine(int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be at least 1.");
+		}
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 */
+	@Override
+	public void label(final PlotTree tree, final int width, final int height, final int[] labels, 
+			ForkJoinPool pool) {
+		
+		int tileRows = (height + tileSize - 1) / tileSize;
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				for (int row = start; row < end; row++) {
+					int y0 = row * tileSize;
+					int y1 = Math.min(y0 + tileSize, height) - 1;
+					int hint = 0;
+					for (int x0 = 0; x0 < width; x0 += tileSize) {
+						int x1 = Math.min(x0 + tileSize, width) - 1;
+						hint = tree.labelTile(x0, y0, x1, y1, labels, width, hint);
+					}
+				}
+			}
+		}.invoke(pool, tileRows);
+	}
+}
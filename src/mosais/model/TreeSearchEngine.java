@@ -0,0 +1,60 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+
+/**
+ * Labels pixels by searching the plot tree once per pixel. Each search starts from the 
+ * point found for the previous pixel, which is usually the answer or very close to it.
+ * Rows are labelled in parallel bands, each band keeping its own previous point.
+ *
+ * @author Andrew Trismen
+ */
+public class TreeSearchEngine implements LabelEngine {
+
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 */
+	@Override
+	public void label(final PlotTree tree, final int width, int height, final int[] labels, 
+			ForkJoinPool pool) {
+		
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				// To accelerate search, start from the closest neighbor of the previous pixel
+				int previousNeighbor = 0;
+				for (int y = start; y < end; y++) {
+					//start each row from the pixel above rather than the end of the last row
+					if (y > start) {
+						previousNeighbor = labels[(y - 1) * width];
+					}
+					for (int x = 0, i = y * width; x < width; x++, i++) {
+						previousNeighbor = tree.getClosestIndex(x, y, previousNeighbor);
+						labels[i] = previousNeighbor;
+					}
+				}
+			}
+		}.invoke(pool, height);
+	}
+}
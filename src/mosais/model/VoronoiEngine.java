@@ -0,0 +1,58 @@
+/*
+    Mosais - Mosaic maker.
+    Copyright (C) 2015  Andrew Trismen
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+    
+	Contact: Andrew Trismen - atrismen@gmail.com
+ */
+package mosais.model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.PlotTree;
+import mosais.distribution.VoronoiDiagram;
+
+/**
+ * Labels pixels by filling the cells of the Voronoi diagram of the distribution, so 
+ * each pixel costs a plain write rather than a search. The diagram is built once from
+ * the Delaunay triangulation of the points and kept by the plot tree, where the cell
+ * polygons are also available for drawing borders or measuring cells. Rows are filled
+ * in parallel bands.
+ *
+ * @author Andrew Trismen
+ */
+public class VoronoiEngine implements LabelEngine {
+	
+	/**
+	 * Label every pixel of the plot area with the index of its closest point.
+	 * 
+	 * @throws IllegalArgumentException if the area is not the plot area of the tree.
+	 */
+	@Override
+	public void label(PlotTree tree, int width, int height, final int[] labels, 
+			ForkJoinPool pool) {
+		
+		final VoronoiDiagram diagram = tree.getVoronoiDiagram();
+		if (diagram.getWidth() != width || diagram.getHeight() != height) {
+			throw new IllegalArgumentException("Area must match the plot area.");
+		}
+		new ParallelBands() {
+			@Override
+			protected void run(int start, int end) {
+				diagram.fillRows(start, end, labels);
+			}
+		}.invoke(pool, height);
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class DelaunayIndexTest {
+	
+	/**
+	 * Test method for {@link mosais.distribution.DelaunayIndex#nearest(int, int, int)}.
+	 *
+	 * Walk from every point to a spread of locations, over random points with some at
+	 * the same location, and compare against a search of every point.
+	 */
+	@Test
+	public void testNearestRandom() {
+		Random rnd = new Random(11);
+		int[] x = new int[400];
+		int[] y = new int[400];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = i % 10 == 0 ? 60 : rnd.nextInt(120);
+			y[i] = i % 10 == 0 ? 45 : rnd.nextInt(90);
+		}
+		DelaunayIndex index = new DelaunayIndex(120, 90, 4);
+		index.load(x, y, x.length);
+		assertTrue(index.isTriangulated());
+		checkNearest(index, 120, 90);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.DelaunayIndex#nearest(int, int, int)}.
+	 *
+	 * Points on a square lattice lie in fours on a circle, so the triangulation could
+	 * take either diagonal of each square, and the walk must still end at the closest.
+	 */
+	@Test
+	public void testNearestLattice() {
+		DelaunayIndex index = new DelaunayIndex(100, 80, 4);
+		for (int y = 2; y < 80; y += 6) {
+			for (int x = 2; x < 100; x += 6) {
+				index.insert(x, y);
+			}
+		}
+		assertFalse(index.isTriangulated());
+		index = new DelaunayIndex(index.getSites(), 100, 80, 4);
+		assertTrue(index.isTriangulated());
+		checkNearest(index, 100, 80);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.DelaunayIndex#insert(int, int)}.
+	 *
+	 * Points inserted after triangulating, and points all on one line, are searched in
+	 * the tree instead.
+	 */
+	@Test
+	public void testWithoutTriangulation() {
+		DelaunayIndex index = new DelaunayIndex(50, 50, 2);
+		for (int i = 0; i < 10; i++) {
+			index.insert(i * 5, i * 5);
+		}
+		index = new DelaunayIndex(index.getSites(), 50, 50, 2);
+		assertFalse(index.isTriangulated());
+		assertEquals(2, index.nearest(11, 9, 9));
+		
+		index.load(new int[] {40, 45}, new int[] {5, 3}, 2);
+		assertTrue(index.isTriangulated());
+		assertEquals(11, index.nearest(44, 0, 0));
+		index.insert(48, 0);
+		assertFalse(index.isTriangulated());
+		assertEquals(12, index.nearest(47, 1, 0));
+		assertEquals(4, index.nearest(19, 21, 12, 5));
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.FrozenIndex#getGraph()}.
+	 *
+	 * Freezing a triangulated index shares its triangulation with the copy of the sites,
+	 * and the Voronoi diagram built from it matches one that joins the sites again.
+	 */
+	@Test
+	public void testFrozenKeepsTriangulation() {
+		Random rnd = new Random(5);
+		int[] x = new int[300];
+		int[] y = new int[300];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = rnd.nextInt(110);
+			y[i] = rnd.nextInt(70);
+		}
+		DelaunayIndex index = new DelaunayIndex(110, 70, 4);
+		index.load(x, y, x.length);
+		FrozenIndex frozen = new FrozenIndex(index, 110, 70, 4, 5);
+		assertNotNull(frozen.getGraph());
+		assertNotSame(index.getSites(), frozen.getSites());
+		for (int y0 = 0; y0 < 70; y0 += 3) {
+			for (int x0 = 0; x0 < 110; x0 += 3) {
+				assertEquals(index.nearest(x0, y0, 0), frozen.nearest(x0, y0, 0));
+			}
+		}
+		
+		VoronoiDiagram shared = VoronoiDiagram.build(frozen.getSites(), frozen.getGraph(), 110, 70);
+		VoronoiDiagram joined = VoronoiDiagram.build(frozen.getSites(), 110, 70);
+		for (int site = 0; site < x.length; site++) {
+			assertEquals(joined.getArea(site), shared.getArea(site), 1e-9);
+		}
+	}
+	
+	/**
+	 * Check that the walk from a few start points finds a closest point for every
+	 * location of the area.
+	 *
+	 * @param index Index to search.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 */
+	private void checkNearest(DelaunayIndex index, int width, int height) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < index.size(); i++) {
+					best = Math.min(best, index.distanceSq(i, x, y));
+				}
+				int start = (x * 31 + y * 17) % index.size();
+				assertEquals(best, index.distanceSq(index.nearest(x, y, start), x, y));
+				assertEquals(best, index.distanceSq(index.nearest(x, y, start, Long.MAX_VALUE, 0.5), x, y));
+			}
+		}
+	}
+}
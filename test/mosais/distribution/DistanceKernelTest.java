@@ -0,0 +1,48 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compare the fastest available kernel to the scalar one. The vector kernel is only 
+ * tested when src-vector is compiled and the vector module is added to the test run.
+ *
+ * @author Andrew Trismen
+ */
+public class DistanceKernelTest {
+
+	/**
+	 * Test method for {@link mosais.distribution.DistanceKernel#closestRow(int[], int[], int[], int, int, int, int, int[], int)}.
+	 * 
+	 * Rows of every length up to a few vectors, with candidates at equal distances, 
+	 * should be labelled the same by both kernels.
+	 */
+	@Test
+	public void testClosestRow() {
+		DistanceKernel kernel = DistanceKernel.forArea(1000, 1000);
+		Random rnd = new Random(5);
+		for (int length = 1; length <= 50; length++) {
+			int count = 1 + rnd.nextInt(20);
+			int[] x = new int[count];
+			int[] y = new int[count];
+			int[] ids = new int[count];
+			for (int c = 0; c < count; c++) {
+				//coarse coordinates give many ties
+				x[c] = rnd.nextInt(10) * 10;
+				y[c] = rnd.nextInt(10) * 10;
+				ids[c] = 100 + c;
+			}
+			int[] expected = new int[length + 3];
+			int[] actual = new int[length + 3];
+			DistanceKernel.scalar().closestRow(x, y, ids, count, 20, 45, length, expected, 3);
+			kernel.closestRow(x, y, ids, count, 20, 45, length, actual, 3);
+			assertArrayEquals(expected, actual);
+		}
+	}
+}
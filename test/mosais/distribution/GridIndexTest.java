@@ -0,0 +1,134 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class GridIndexTest {
+	
+	GridIndex grid;
+
+	/**
+	 * Fill a grid with random points, enough that some are in the compressed rows and 
+	 * some are still chained per cell
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		
+		grid = new GridIndex(100, 70, 9);
+		Random rnd = new Random(7);
+		for (int i = 0; i < 150; i++) {
+			grid.insert(rnd.nextInt(100), rnd.nextInt(70));
+		}
+		
+	}
+
+	/**
+	 * Test method for {@link mosais.distribution.GridIndex#nearest(int, int)}.
+	 */
+	@Test
+	public void testNearest() {
+		for (int y = 0; y < 70; y += 2) {
+			for (int x = 0; x < 100; x += 2) {
+				long[] sorted = sortedDistances(x, y);
+				assertEquals(sorted[0], grid.distanceSq(grid.nearest(x, y), x, y));
+				assertEquals(sorted[0], grid.distanceSq(grid.nearest(x, y, 3), x, y));
+				int[] found = grid.kNearest(x, y, 5);
+				for (int i = 0; i < found.length; i++) {
+					assertEquals(sorted[i], grid.distanceSq(found[i], x, y));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.GridIndex#nearest(int, int, int, long)}.
+	 */
+	@Test
+	public void testNearestWithLimit() {
+		grid = new GridIndex(100, 70, 9);
+		grid.insert(50, 30);
+		assertEquals(-1, grid.nearest(50, 40, -1, 100));
+		assertEquals(0, grid.nearest(50, 40, -1, 101));
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.GridIndex#withinRadius(int, int, int)}.
+	 */
+	@Test
+	public void testWithinRadius() {
+		for (int y = 0; y < 70; y += 5) {
+			for (int x = 0; x < 100; x += 5) {
+				int expected = 0;
+				for (long distance : sortedDistances(x, y)) {
+					if (distance < 144) {
+						expected++;
+					}
+				}
+				assertEquals(expected, grid.withinRadius(x, y, 12).length);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.GridIndex#kNearest(int, int, int, int[])}.
+	 */
+	@Test
+	public void testKNearestInto() {
+		int[] out = new int[12];
+		for (int y = 0; y < 70; y += 5) {
+			for (int x = 0; x < 100; x += 5) {
+				long[] sorted = sortedDistances(x, y);
+				assertEquals(12, grid.kNearest(x, y, 12, out));
+				for (int i = 0; i < out.length; i++) {
+					assertEquals(sorted[i], grid.distanceSq(out[i], x, y));
+				}
+				assertEquals(1, grid.kNearest(x, y, 1, out));
+				assertEquals(sorted[0], grid.distanceSq(out[0], x, y));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.GridIndex#anyWithin(int, int, int)}.
+	 */
+	@Test
+	public void testAnyWithin() {
+		for (int y = 0; y < 70; y += 5) {
+			for (int x = 0; x < 100; x += 5) {
+				long closest = sortedDistances(x, y)[0];
+				for (int radius = 0; radius < 12; radius++) {
+					assertEquals(closest < (long)radius * radius, grid.anyWithin(x, y, radius));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the squared distances from a location to every point in the grid.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return The distances, smallest first.
+	 */
+	private long[] sortedDistances(int x, int y) {
+		long[] distances = new long[grid.size()];
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = grid.distanceSq(i, x, y);
+		}
+		Arrays.sort(distances);
+		return distances;
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class KdTreeTest {
+	
+	KdTree kd;
+	
+	/**
+	 * Fill a tree with clumped random points, and many points at one location
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		
+		kd = new KdTree(120, 90, 4);
+		Random rnd = new Random(5);
+		for (int i = 0; i < 400; i++) {
+			//half the points fall in a small corner
+			int size = i % 2 == 0 ? 15 : 90;
+			kd.insert(rnd.nextInt(size), rnd.nextInt(size));
+		}
+		for (int i = 0; i < 30; i++) {
+			kd.insert(60, 45);
+		}
+		
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#insert(int, int)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInsertOutside() {
+		kd.insert(3, 90);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#nearest(int, int)}.
+	 */
+	@Test
+	public void testNearest() {
+		for (int y = 0; y < 90; y += 2) {
+			for (int x = 0; x < 120; x += 2) {
+				long[] sorted = sortedDistances(x, y);
+				assertEquals(sorted[0], kd.distanceSq(kd.nearest(x, y), x, y));
+				assertEquals(sorted[0], kd.distanceSq(kd.nearest(x, y, 7), x, y));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#kNearest(int, int, int)}.
+	 */
+	@Test
+	public void testKNearest() {
+		for (int y = 0; y < 90; y += 7) {
+			for (int x = 0; x < 120; x += 7) {
+				long[] sorted = sortedDistances(x, y);
+				int[] found = kd.kNearest(x, y, 12);
+				assertEquals(12, found.length);
+				for (int i = 0; i < found.length; i++) {
+					assertEquals(sorted[i], kd.distanceSq(found[i], x, y));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#withinRadius(int, int, int)}.
+	 */
+	@Test
+	public void testWithinRadius() {
+		for (int y = 0; y < 90; y += 7) {
+			for (int x = 0; x < 120; x += 7) {
+				int expected = 0;
+				for (long distance : sortedDistances(x, y)) {
+					if (distance < 100) {
+						expected++;
+					}
+				}
+				int[] found = kd.withinRadius(x, y, 10);
+				assertEquals(expected, found.length);
+				for (int point : found) {
+					assertTrue(kd.distanceSq(point, x, y) < 100);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#kNearest(int, int, int, int[])}.
+	 */
+	@Test
+	public void testKNearestInto() {
+		int[] out = new int[12];
+		for (int y = 0; y < 90; y += 7) {
+			for (int x = 0; x < 120; x += 7) {
+				long[] sorted = sortedDistances(x, y);
+				assertEquals(12, kd.kNearest(x, y, 12, out));
+				for (int i = 0; i < out.length; i++) {
+					assertEquals(sorted[i], kd.distanceSq(out[i], x, y));
+				}
+				assertEquals(1, kd.kNearest(x, y, 1, out));
+				assertEquals(sorted[0], kd.distanceSq(out[0], x, y));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#anyWithin(int, int, int)}.
+	 */
+	@Test
+	public void testAnyWithin() {
+		for (int y = 0; y < 90; y += 7) {
+			for (int x = 0; x < 120; x += 7) {
+				long closest = sortedDistances(x, y)[0];
+				for (int radius = 0; radius < 12; radius++) {
+					assertEquals(closest < (long)radius * radius, kd.anyWithin(x, y, radius));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#nearest(int, int, int, long, double)}.
+	 * 
+	 * An approximate point should be no more than 1 + epsilon times as far as the 
+	 * closest point, and no error bound should give the closest point.
+	 */
+	@Test
+	public void testNearestApproximate() {
+		for (int y = 0; y < 90; y += 5) {
+			for (int x = 0; x < 120; x += 5) {
+				long closest = sortedDistances(x, y)[0];
+				assertEquals(closest, kd.distanceSq(kd.nearest(x, y, -1, Long.MAX_VALUE, 0), x, y));
+				for (double epsilon : new double[] {0.1, 0.5, 2}) {
+					long found = kd.distanceSq(kd.nearest(x, y, -1, Long.MAX_VALUE, epsilon), x, y);
+					assertTrue(found >= closest);
+					assertTrue(found <= closest * (1 + epsilon) * (1 + epsilon));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.KdTree#nearest(int, int, int, long, double)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNearestNegativeError() {
+		kd.nearest(5, 5, -1, Long.MAX_VALUE, -0.5);
+	}
+	
+	/**
+	 * Get the squared distances from a location to every point in the tree.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * @return The distances, smallest first.
+	 */
+	private long[] sortedDistances(int x, int y) {
+		long[] distances = new long[kd.size()];
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = kd.distanceSq(i, x, y);
+		}
+		Arrays.sort(distances);
+		return distances;
+	}
+}
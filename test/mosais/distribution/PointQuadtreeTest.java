@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class PointQuadtreeTest {
+	
+	PointQuadtree qt;
+
+	/**
+	 * Create an empty tree over a 10 by 10 area
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		
+		qt = new PointQuadtree(10, 10, 2);
+		
+	}
+
+	/**
+	 * Test method for {@link mosais.distribution.PointQuadtree#insert(int, int)}.
+	 * 
+	 * Insert the points used in QuadtreeTest to force the same subdivides, then 
+	 * check indexes, coordinates and the number of nodes made.
+	 */
+	@Test
+	public void testInsert() {
+		assertEquals(0, qt.insert(2, 1));
+		assertEquals(1, qt.insert(9, 1));
+		assertEquals(1, qt.getNodeCount());
+		assertEquals(2, qt.insert(7, 8));
+		//first subdivide should have happened
+		assertEquals(5, qt.getNodeCount());
+		qt.insert(4, 2);
+		qt.insert(2, 4);
+		//NW should have subdivided
+		assertEquals(9, qt.getNodeCount());
+		assertEquals(5, qt.size());
+		assertEquals(4, qt.getX(3));
+		assertEquals(2, qt.getY(3));
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PointQuadtree#insert(int, int)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInsertOutside() {
+		qt.insert(10, 3);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PointQuadtree#nearest(int, int, int)}.
+	 * 
+	 * Compare against a search of every point, including many points at one location.
+	 */
+	@Test
+	public void testNearest() {
+		PointQuadtree tree = new PointQuadtree(100, 80, 4);
+		Random rnd = new Random(3);
+		for (int i = 0; i < 300; i++) {
+			tree.insert(rnd.nextInt(100), rnd.nextInt(80));
+		}
+		for (int i = 0; i < 20; i++) {
+			tree.insert(50, 40);
+		}
+		
+		for (int y = 0; y < 80; y += 3) {
+			for (int x = 0; x < 100; x += 3) {
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < tree.size(); i++) {
+					best = Math.min(best, tree.distanceSq(i, x, y));
+				}
+				assertEquals(best, tree.distanceSq(tree.nearest(x, y, 0), x, y));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PointQuadtree#PointQuadtree(SiteStore, int, int, int)}.
+	 * 
+	 * Index the sites of a tree in a new tree, which should share the store and be 
+	 * split the same way.
+	 */
+	@Test
+	public void testIndexSites() {
+		testInsert();
+		PointQuadtree copy = new PointQuadtree(qt.getSites(), 10, 10, 2);
+		assertSame(qt.getSites(), copy.getSites());
+		assertEquals(5, copy.size());
+		assertEquals(9, copy.getNodeCount());
+		assertEquals(3, copy.nearest(5, 3));
+		assertEquals(5, copy.insert(8, 8));
+		assertEquals(6, copy.getSites().size());
+	}
+}
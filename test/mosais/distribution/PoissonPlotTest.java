@@ -6,6 +6,8 @@ package mosais.distribution;
 import static org.junit.Assert.*;
 
 import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -52,5 +54,91 @@ public class PoissonPlotTest {
 		assertEquals(plot.getClosestNeighbor(new Point(2, 6), new BoundingBox(0, 0, 10, 10)), p[4]);
 		assertEquals(plot.getClosestNeighbor(new Point(4, 1), new BoundingBox(0, 0, 10, 10)), p[3]);
 	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PlotTree#getClosestIndex(int, int, int)}.
+	 */
+	@Test
+	public void testGetClosestIndex() {
+		assertEquals(1, plot.getClosestIndex(8, 2, 0));
+		assertEquals(0, plot.getClosestIndex(3, 1, 2));
+		assertEquals(4, plot.getClosestIndex(2, 6, 1));
+		assertEquals(3, plot.getClosestIndex(4, 1, 3));
+		assertEquals(2, plot.getClosestIndex(9, 9));
+		assertEquals(4, plot.getClosestIndex(0, 5));
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PlotTree#freeze()}.
+	 * 
+	 * The frozen distribution should find the same points and refuse new ones.
+	 */
+	@Test
+	public void testFreeze() {
+		FrozenIndex frozen = plot.freeze();
+		assertTrue(plot.isFrozen());
+		assertSame(frozen, plot.freeze());
+		assertEquals(5, frozen.size());
+		assertEquals(1, plot.getClosestIndex(8, 2, 0));
+		assertEquals(4, plot.getClosestIndex(0, 5));
+		try {
+			plot.insert(new Point(5, 5));
+			fail("Inserted into a frozen distribution.");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(5, frozen.size());
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PoissonPlot#createDistribution()}.
+	 * 
+	 * Every point must lie inside the area and at least the minimum distance from every
+	 * other, and the area should be well covered.
+	 */
+	@Test
+	public void testCreateDistribution() {
+		PoissonPlot poisson = new PoissonPlot(6, 200, 150);
+		poisson.createDistribution();
+		List<Point> points = poisson.getDistributionAsList();
+		assertTrue(points.size() > 200 * 150 / (4 * 6 * 6));
+		for (int i = 0; i < points.size(); i++) {
+			Point a = points.get(i);
+			assertTrue(a.x >= 0 && a.x < 200 && a.y >= 0 && a.y < 150);
+			for (int j = i + 1; j < points.size(); j++) {
+				assertTrue(a.distanceSq(points.get(j)) >= 6 * 6);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PoissonPlot#createDistribution(java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * An area of many tiles filled on several threads must give the same points as on
+	 * one thread, with none closer than the minimum distance across the tile edges.
+	 */
+	@Test
+	public void testCreateDistributionInPool() {
+		PoissonPlot serial = new PoissonPlot(3, 400, 300, SpatialIndex.Type.GRID);
+		serial.setSeed(7);
+		serial.createDistribution();
+		PoissonPlot parallel = new PoissonPlot(3, 400, 300, SpatialIndex.Type.GRID);
+		parallel.setSeed(7);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallel.createDistribution(pool);
+		} finally {
+			pool.shutdown();
+		}
+		
+		List<Point> points = parallel.getDistributionAsList();
+		assertEquals(serial.getDistributionAsList(), points);
+		assertTrue(points.size() > 400 * 300 / (4 * 3 * 3));
+		SpatialIndex index = parallel.getIndex();
+		int[] closest = new int[2];
+		for (Point a : points) {
+			assertEquals(2, index.kNearest(a.x, a.y, 2, closest));
+			assertTrue(index.distanceSq(closest[1], a.x, a.y) >= 3 * 3);
+		}
+	}
 
 }
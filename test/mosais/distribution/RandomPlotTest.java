@@ -0,0 +1,63 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class RandomPlotTest {
+	
+	/**
+	 * Test method for {@link mosais.distribution.RandomPlot#createDistribution(java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Points generated in chunks on several threads must be the same as on one thread,
+	 * and all off the left and top edges.
+	 */
+	@Test
+	public void testCreateDistributionInPool() {
+		//a few chunks, the last one short
+		int count = 3 * 65536 + 1234;
+		RandomPlot serial = new RandomPlot(count, 300, 200, SpatialIndex.Type.KD_TREE);
+		serial.setSeed(3);
+		serial.createDistribution();
+		RandomPlot parallel = new RandomPlot(count, 300, 200, SpatialIndex.Type.KD_TREE);
+		parallel.setSeed(3);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallel.createDistribution(pool);
+		} finally {
+			pool.shutdown();
+		}
+		
+		List<Point> points = parallel.getDistributionAsList();
+		assertEquals(count, points.size());
+		assertEquals(serial.getDistributionAsList(), points);
+		for (Point p : points) {
+			assertTrue(p.x >= 1 && p.x < 300 && p.y >= 1 && p.y < 200);
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.PlotTree#setSeed(long)}.
+	 */
+	@Test
+	public void testSeed() {
+		RandomPlot a = new RandomPlot(500, 300, 200);
+		a.setSeed(11);
+		a.createDistribution();
+		RandomPlot b = new RandomPlot(500, 300, 200);
+		b.setSeed(12);
+		b.createDistribution();
+		assertFalse(a.getDistributionAsList().equals(b.getDistributionAsList()));
+	}
+}
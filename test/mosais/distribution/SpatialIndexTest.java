@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Trismen
+ */
+public class SpatialIndexTest {
+	
+	/** Error bounds to try, the same as the levels offered by the GUI */
+	private static final double[] ERROR_BOUNDS = {0, 0.05, 0.25, 1};
+	
+	/**
+	 * Test method for {@link mosais.distribution.SpatialIndex#nearest(int, int, int, long, double)}.
+	 *
+	 * Every type of index, loaded in one go, should find a point no more than 1 + epsilon
+	 * times as far as the closest point, so its squared distance is within (1 + epsilon)^2.
+	 */
+	@Test
+	public void testNearestApproximateLoaded() {
+		for (SpatialIndex.Type type : SpatialIndex.Type.values()) {
+			SpatialIndex index = type.create(150, 110, 4, 6);
+			int[] x = new int[500];
+			int[] y = new int[500];
+			fillClumped(new Random(17), x, y, 150, 110);
+			index.load(x, y, x.length);
+			checkApproximate(index, 150, 110);
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.SpatialIndex#nearest(int, int, int, long, double)}.
+	 *
+	 * The same with the points inserted one at a time, which leaves them pending in a
+	 * grid and unbalanced in the trees.
+	 */
+	@Test
+	public void testNearestApproximateInserted() {
+		for (SpatialIndex.Type type : SpatialIndex.Type.values()) {
+			SpatialIndex index = type.create(150, 110, 4, 6);
+			int[] x = new int[500];
+			int[] y = new int[500];
+			fillClumped(new Random(23), x, y, 150, 110);
+			for (int i = 0; i < x.length; i++) {
+				index.insert(x[i], y[i]);
+			}
+			checkApproximate(index, 150, 110);
+		}
+	}
+	
+	/**
+	 * Fill arrays with random points, half of them in a small corner and a few all at
+	 * one location.
+	 *
+	 * @param rnd Source of the points.
+	 * @param x Array for the x coordinates.
+	 * @param y Array for the y coordinates.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 */
+	private void fillClumped(Random rnd, int[] x, int[] y, int width, int height) {
+		for (int i = 0; i < x.length; i++) {
+			if (i % 25 == 0) {
+				x[i] = width / 2;
+				y[i] = height / 2;
+			} else if (i % 2 == 0) {
+				x[i] = rnd.nextInt(20);
+				y[i] = rnd.nextInt(20);
+			} else {
+				x[i] = rnd.nextInt(width);
+				y[i] = rnd.nextInt(height);
+			}
+		}
+	}
+	
+	/**
+	 * Compare the approximate search at every error bound to a search of every point, at
+	 * a spread of locations over an index.
+	 *
+	 * @param index Index to search.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 */
+	private void checkApproximate(SpatialIndex index, int width, int height) {
+		for (int y = 0; y < height; y += 3) {
+			for (int x = 0; x < width; x += 3) {
+				long closest = Long.MAX_VALUE;
+				for (int i = 0; i < index.size(); i++) {
+					closest = Math.min(closest, index.distanceSq(i, x, y));
+				}
+				for (double epsilon : ERROR_BOUNDS) {
+					int point = index.nearest(x, y, -1, Long.MAX_VALUE, epsilon);
+					String where = index.getType() + " e=" + epsilon + " at " + x + "," + y;
+					assertTrue(where, point >= 0);
+					long found = index.distanceSq(point, x, y);
+					assertTrue(where, found >= closest);
+					assertTrue(where, found <= closest * (1 + epsilon) * (1 + epsilon));
+				}
+			}
+		}
+	}
+}
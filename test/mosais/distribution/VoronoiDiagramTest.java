@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package mosais.distribution;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Fill the cells of Voronoi diagrams and compare the labels to a search of every site.
+ *
+ * @author Andrew Trismen
+ */
+public class VoronoiDiagramTest {
+	
+	/**
+	 * Test method for {@link mosais.distribution.VoronoiDiagram#fillRows(int, int, int[])}.
+	 *
+	 * Random sites with some at the same location, filled in two bands.
+	 */
+	@Test
+	public void testFillRandom() {
+		Random rnd = new Random(5);
+		int[] x = new int[300];
+		int[] y = new int[300];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = i % 12 == 0 ? 30 : rnd.nextInt(110);
+			y[i] = i % 12 == 0 ? 20 : rnd.nextInt(70);
+		}
+		checkDiagram(x, y, 110, 70);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.VoronoiDiagram#fillRows(int, int, int[])}.
+	 *
+	 * Sites on a lattice put the corners of the cells exactly on pixels.
+	 */
+	@Test
+	public void testFillLattice() {
+		int[] x = new int[100];
+		int[] y = new int[100];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = 3 + (i % 10) * 8;
+			y[i] = 1 + (i / 10) * 4;
+		}
+		checkDiagram(x, y, 81, 41);
+	}
+	
+	/**
+	 * Test method for {@link mosais.distribution.VoronoiDiagram#build(SiteStore, int, int)}.
+	 *
+	 * Sites all on one line cannot be triangulated, and have cells divided by parallel
+	 * lines instead.
+	 */
+	@Test
+	public void testFillCollinear() {
+		checkDiagram(new int[] {2, 40, 11, 29, 11}, new int[] {1, 20, 5, 14, 5}, 45, 30);
+		checkDiagram(new int[] {7}, new int[] {3}, 10, 10);
+	}
+	
+	/**
+	 * Check that the cells of a diagram cover the area, and that filling them labels
+	 * every pixel with a closest site.
+	 *
+	 * @param x X coordinates of the sites.
+	 * @param y Y coordinates of the sites.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 */
+	private void checkDiagram(int[] x, int[] y, int width, int height) {
+		SiteStore sites = new SiteStore();
+		sites.addAll(x, y, x.length);
+		VoronoiDiagram diagram = VoronoiDiagram.build(sites, width, height);
+		assertEquals(x.length, diagram.size());
+		
+		double area = 0;
+		for (int i = 0; i < diagram.size(); i++) {
+			area += diagram.getArea(i);
+		}
+		assertEquals((double) width * height, area, 1e-6 * width * height);
+		
+		int[] labels = new int[width * height];
+		diagram.fillRows(0, height / 2, labels);
+		diagram.fillRows(height / 2, height, labels);
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < x.length; i++) {
+					best = Math.min(best, distanceSq(x[i], y[i], px, py));
+				}
+				int label = labels[py * width + px];
+				assertEquals(best, distanceSq(x[label], y[label], px, py));
+			}
+		}
+	}
+	
+	/**
+	 * @return Squared distance between two locations.
+	 */
+	private static long distanceSq(int x0, int y0, int x1, int y1) {
+		long dx = x0 - x1;
+		long dy = y0 - y1;
+		return dx * dx + dy * dy;
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * 
+ */
+package mosais.image;
+
+import static org.junit.Assert.*;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import mosais.distribution.RandomPlot;
+import mosais.model.LabelMap;
+import mosais.model.Tesselation;
+
+import org.junit.Test;
+
+/**
+ * Write mosaics through each kind of raster, into whole images and into sub images 
+ * that share a larger image's storage, and compare every pixel to the color the image 
+ * had at its cell's point.
+ *
+ * @author Andrew Trismen
+ */
+public class PixelRasterTest {
+	
+	int width = 53;
+	int height = 41;
+	
+	/**
+	 * Test method for {@link mosais.image.PixelRaster#fillRun(int, int, int, int)}.
+	 * 
+	 * Packed int images are written in place.
+	 */
+	@Test
+	public void testIntImages() {
+		checkType(BufferedImage.TYPE_INT_RGB, IntPixelRaster.class);
+		checkType(BufferedImage.TYPE_INT_ARGB, IntPixelRaster.class);
+	}
+	
+	/**
+	 * Test method for {@link mosais.image.PixelRaster#fillRun(int, int, int, int)}.
+	 * 
+	 * Other types are converted and written back when finished.
+	 */
+	@Test
+	public void testConvertedImages() {
+		checkType(BufferedImage.TYPE_INT_BGR, ConvertedPixelRaster.class);
+		checkType(BufferedImage.TYPE_USHORT_565_RGB, ConvertedPixelRaster.class);
+	}
+	
+	/**
+	 * Test method for {@link mosais.image.PixelRaster#fillRun(int, int, int, int)}.
+	 * 
+	 * Interleaved byte images of each supported size are written in place.
+	 */
+	@Test
+	public void testByteImages() {
+		checkType(BufferedImage.TYPE_3BYTE_BGR, BytePixelRaster.class);
+		checkType(BufferedImage.TYPE_4BYTE_ABGR, BytePixelRaster.class);
+		checkType(BufferedImage.TYPE_4BYTE_ABGR_PRE, BytePixelRaster.class);
+		checkType(BufferedImage.TYPE_BYTE_GRAY, BytePixelRaster.class);
+		checkType(BufferedImage.TYPE_BYTE_INDEXED, BytePixelRaster.class);
+	}
+	
+	/**
+	 * Test method for {@link mosais.image.BytePixelRaster#supports(BufferedImage)}.
+	 * 
+	 * Custom byte layouts are written in place only when each byte of a pixel holds a
+	 * different band.
+	 */
+	@Test
+	public void testCustomByteImages() {
+		int[] rgb = {0, 1, 2};
+		checkImages(customImage(width, height, rgb), customImage(width + 9, height + 11, rgb), 
+				BytePixelRaster.class);
+		int[] repeated = {0, 1, 1};
+		checkImages(customImage(width, height, repeated), customImage(width + 9, height + 11, repeated), 
+				ConvertedPixelRaster.class);
+	}
+	
+	/**
+	 * Test method for {@link mosais.image.BytePixelRaster#toSample(int)}.
+	 * 
+	 * Colors of indexed images are stored as the index of the closest palette entry.
+	 */
+	@Test
+	public void testIndexedToSample() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED);
+		IndexColorModel palette = (IndexColorModel)image.getColorModel();
+		PixelRaster raster = PixelRaster.wrap(image);
+		for (int i = 0; i < palette.getMapSize(); i++) {
+			int color = palette.getRGB(i);
+			assertEquals(color, palette.getRGB(raster.toSample(color)));
+		}
+		
+		Random rnd = new Random(4);
+		int[] colors = new int[width];
+		for (int x = 0; x < width; x++) {
+			int color = rnd.nextInt() | 0xff000000;
+			image.setRGB(x, 0, color);
+			assertEquals(image.getRaster().getSample(x, 0, 0), raster.toSample(color));
+		}
+		raster.readColors(0, colors);
+		for (int x = 0; x < width; x++) {
+			assertEquals(image.getRGB(x, 0), colors[x]);
+		}
+	}
+	
+	/**
+	 * Check that an image type gets the expected raster, and that mosaics written 
+	 * through it into a whole image and into a sub image are correct.
+	 * 
+	 * @param type Type of image to create.
+	 * @param rasterType Class of raster expected for the type.
+	 */
+	void checkType(int type, Class<?> rasterType) {
+		checkImages(new BufferedImage(width, height, type), 
+				new BufferedImage(width + 9, height + 11, type), rasterType);
+	}
+	
+	/**
+	 * Check that images get the expected raster, and that mosaics written through it 
+	 * into a whole image and into a sub image are correct.
+	 * 
+	 * @param image Image of the test size.
+	 * @param parent Image of the same type, 9 pixels wider and 11 taller.
+	 * @param rasterType Class of raster expected for the images.
+	 */
+	void checkImages(BufferedImage image, BufferedImage parent, Class<?> rasterType) {
+		assertSame(rasterType, PixelRaster.wrap(image).getClass());
+		fillRandom(image, image.getType());
+		checkMosaic(image);
+		
+		//the sub image starts part way into rows of a larger one
+		fillRandom(parent, image.getType() + 1);
+		int[] before = parent.getRGB(0, 0, parent.getWidth(), parent.getHeight(), null, 0, parent.getWidth());
+		BufferedImage sub = parent.getSubimage(4, 6, width, height);
+		assertSame(rasterType, PixelRaster.wrap(sub).getClass());
+		checkMosaic(sub);
+		
+		for (int y = 0; y < parent.getHeight(); y++) {
+			for (int x = 0; x < parent.getWidth(); x++) {
+				if (x < 4 || y < 6 || x >= 4 + width || y >= 6 + height) {
+					assertEquals(before[y * parent.getWidth() + x], parent.getRGB(x, y));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Make a mosaic of an image and check every pixel has the color the image had at
+	 * the point of its cell.
+	 * 
+	 * @param image Image to make a mosaic of.
+	 */
+	void checkMosaic(BufferedImage image) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		int[] original = image.getRGB(0, 0, w, h, null, 0, w);
+		RandomPlot plot = new RandomPlot(30, w, h);
+		plot.createDistribution();
+		Tesselation tesselation = new Tesselation(image, plot);
+		tesselation.setParallelism(2);
+		tesselation.applyMosaic();
+		
+		LabelMap map = tesselation.getLabelMap();
+		int[] pointX = map.getPointX();
+		int[] pointY = map.getPointY();
+		int[] row = new int[w];
+		for (int y = 0; y < h; y++) {
+			map.decodeRow(y, row);
+			for (int x = 0; x < w; x++) {
+				assertEquals(original[pointY[row[x]] * w + pointX[row[x]]], image.getRGB(x, y));
+			}
+		}
+		tesselation.cleanUp();
+	}
+	
+	/**
+	 * Create an RGB image of interleaved bytes with the given band offsets.
+	 * 
+	 * @param w Width of the image.
+	 * @param h Height of the image.
+	 * @param bandOffsets Offset of the red, green and blue bytes within a pixel.
+	 * @return A TYPE_CUSTOM image.
+	 */
+	BufferedImage customImage(int w, int h, int[] bandOffsets) {
+		ComponentColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 
+				false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		BufferedImage image = new BufferedImage(model, 
+				Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, w, h, w * 3, 3, bandOffsets, null), 
+				false, null);
+		assertEquals(BufferedImage.TYPE_CUSTOM, image.getType());
+		return image;
+	}
+	
+	/**
+	 * Set every pixel of an image to a random color.
+	 * 
+	 * @param image Image to fill.
+	 * @param seed Seed of the colors.
+	 */
+	void fillRandom(BufferedImage image, long seed) {
+		Random rnd = new Random(seed);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, rnd.nextInt());
+			}
+		}
+	}
+}
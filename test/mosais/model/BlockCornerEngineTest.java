@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Test;
+
+/**
+ * Compare the labels of the block corner engine to a search of every point, with blocks
+ * that do not divide the area evenly.
+ *
+ * @author Andrew Trismen
+ */
+public class BlockCornerEngineTest {
+	
+	/**
+	 * Test method for {@link mosais.model.BlockCornerEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Blocks of 7 leave a column of 2 and a row of 1 at the edges of a 37 by 211 area.
+	 */
+	@Test
+	public void testLabelUneven() {
+		checkLabels(new BlockCornerEngine(7), 37, 211, 40, null);
+		checkLabels(new BlockCornerEngine(7), 37, 211, 400, null);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.BlockCornerEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Few points leave many blocks whole, which are filled without searching, and the
+	 * result must not change when rows of blocks run in a pool.
+	 */
+	@Test
+	public void testLabelLargeBlocks() {
+		checkLabels(new BlockCornerEngine(), 150, 100, 5, null);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			checkLabels(new BlockCornerEngine(), 150, 100, 25, pool);
+			checkLabels(new BlockCornerEngine(1), 30, 20, 25, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Label a fixed distribution and check every pixel is labelled with a point at the 
+	 * closest distance. Points at the same distance are equally valid.
+	 * 
+	 * @param engine Engine to label with.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param count Number of points.
+	 * @param pool Pool to label in, or null.
+	 */
+	private void checkLabels(BlockCornerEngine engine, int width, int height, int count, ForkJoinPool pool) {
+		Random rnd = new Random(count);
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = rnd.nextInt(width);
+			y[i] = rnd.nextInt(height);
+		}
+		RandomPlot plot = new RandomPlot(0, width, height);
+		plot.insertAll(x, y, count);
+		
+		int[] labels = new int[width * height];
+		engine.label(plot, width, height, labels, pool);
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				long closest = Long.MAX_VALUE;
+				for (int i = 0; i < count; i++) {
+					closest = Math.min(closest, distanceSq(x[i], y[i], px, py));
+				}
+				int label = labels[py * width + px];
+				assertEquals(closest, distanceSq(x[label], y[label], px, py));
+			}
+		}
+	}
+	
+	/**
+	 * @return Squared distance between two locations.
+	 */
+	private static long distanceSq(int x0, int y0, int x1, int y1) {
+		long dx = x0 - x1;
+		long dy = y0 - y1;
+		return dx * dx + dy * dy;
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.RandomPlot;
+import mosais.image.PixelRaster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the colors chosen for each cell to averages worked out pixel by pixel.
+ *
+ * @author Andrew Trismen
+ */
+public class CellColorsTest {
+	
+	int width = 97;
+	int height = 61;
+	BufferedImage image;
+	PixelRaster raster;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Random rnd = new Random(8);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, rnd.nextInt());
+			}
+		}
+		raster = PixelRaster.wrap(image);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.CellColors#average(mosais.image.PixelRaster, mosais.model.LabelMap, java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Each cell must get the rounded average of every channel of its pixels, with or 
+	 * without a pool.
+	 */
+	@Test
+	public void testAverage() {
+		RandomPlot plot = new RandomPlot(40, width, height);
+		plot.createDistribution();
+		int[] labels = new int[width * height];
+		new TileEngine().label(plot, width, height, labels, null);
+		LabelMap map = LabelMap.encode(labels, width, height, plot.getSites().getXArray(), 
+				plot.getSites().getYArray(), null);
+		
+		int points = map.getPointCount();
+		long[][] sums = new long[points][5];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				addPixel(sums[labels[y * width + x]], image.getRGB(x, y));
+			}
+		}
+		
+		int[] colors = CellColors.average(raster, map, null);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			assertArrayEquals(colors, CellColors.average(raster, map, pool));
+		} finally {
+			pool.shutdown();
+		}
+		for (int p = 0; p < points; p++) {
+			assertEquals(averageOf(sums[p]), colors[p]);
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.CellColors#box(mosais.image.PixelRaster, int[], int[], int, java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Squares around points at the corners and edges are clipped to the image.
+	 */
+	@Test
+	public void testBox() {
+		int[] pointX = {0, width - 1, 0, width - 1, 48, 2, 95, 30};
+		int[] pointY = {0, 0, height - 1, height - 1, 30, 31, 1, height - 3};
+		for (int radius = 0; radius <= 70; radius += 5) {
+			int[] colors = CellColors.box(raster, pointX, pointY, radius, null);
+			for (int i = 0; i < pointX.length; i++) {
+				long[] sums = new long[5];
+				for (int y = pointY[i] - radius; y <= pointY[i] + radius; y++) {
+					for (int x = pointX[i] - radius; x <= pointX[i] + radius; x++) {
+						if (x >= 0 && y >= 0 && x < width && y < height) {
+							addPixel(sums, image.getRGB(x, y));
+						}
+					}
+				}
+				assertEquals(averageOf(sums), colors[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.CellColors#disc(mosais.image.PixelRaster, int[], int[], int, java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Discs up to a radius of 7 are built with a box per row, so they hold exactly the
+	 * pixels within the radius, clipped to the image.
+	 */
+	@Test
+	public void testDisc() {
+		int[] pointX = {0, width - 1, 0, 48, 3, 95};
+		int[] pointY = {0, 0, height - 1, 30, 31, 58};
+		for (int radius = 0; radius <= 7; radius++) {
+			int[] colors = CellColors.disc(raster, pointX, pointY, radius, null);
+			for (int i = 0; i < pointX.length; i++) {
+				long[] sums = new long[5];
+				for (int y = pointY[i] - radius; y <= pointY[i] + radius; y++) {
+					for (int x = pointX[i] - radius; x <= pointX[i] + radius; x++) {
+						int dx = x - pointX[i];
+						int dy = y - pointY[i];
+						if (dx * dx + dy * dy <= radius * radius 
+								&& x >= 0 && y >= 0 && x < width && y < height) {
+							addPixel(sums, image.getRGB(x, y));
+						}
+					}
+				}
+				assertEquals(averageOf(sums), colors[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Add the channels of a color and one to the count.
+	 * 
+	 * @param sums Sum of each channel, lowest byte first, followed by the pixel count.
+	 * @param color Color to add.
+	 */
+	void addPixel(long[] sums, int color) {
+		for (int c = 0; c < 4; c++) {
+			sums[c] += (color >>> (8 * c)) & 0xff;
+		}
+		sums[4]++;
+	}
+	
+	/**
+	 * @param sums Sum of each channel, lowest byte first, followed by the pixel count.
+	 * @return Color of the rounded average of each channel, 0 if the count is 0.
+	 */
+	int averageOf(long[] sums) {
+		if (sums[4] == 0) {
+			return 0;
+		}
+		int color = 0;
+		for (int c = 0; c < 4; c++) {
+			color |= (int)Math.round((double)sums[c] / sums[4]) << (8 * c);
+		}
+		return color;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.List;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the labels of the distance transform to a search of every point.
+ *
+ * @author Andrew Trismen
+ */
+public class DistanceTransformEngineTest {
+	
+	RandomPlot plot;
+	int width = 120;
+	int height = 80;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		plot = new RandomPlot(60, width, height);
+		plot.createDistribution();
+	}
+
+	/**
+	 * Test method for {@link mosais.model.DistanceTransformEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Every pixel must be labelled with a point at the closest distance. Points at the 
+	 * same distance are equally valid.
+	 */
+	@Test
+	public void testLabel() {
+		int[] labels = new int[width * height];
+		new DistanceTransformEngine().label(plot, width, height, labels, null);
+		
+		List<Point> points = plot.getDistributionAsList();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double closest = Double.MAX_VALUE;
+				for (Point p : points) {
+					closest = Math.min(closest, p.distanceSq(x, y));
+				}
+				assertEquals(closest, points.get(labels[y * width + x]).distanceSq(x, y), 0);
+			}
+		}
+	}
+}
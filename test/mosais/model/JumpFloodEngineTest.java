@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the labels of the jump flood engine to a search of every point, over a fixed
+ * distribution so the number of mislabelled pixels is the same every run.
+ *
+ * @author Andrew Trismen
+ */
+public class JumpFloodEngineTest {
+	
+	RandomPlot plot;
+	int width = 400;
+	int height = 300;
+	int[] x = new int[2000];
+	int[] y = new int[2000];
+	long[] closest = new long[width * height];
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rnd = new Random(2);
+		for (int i = 0; i < x.length; i++) {
+			x[i] = rnd.nextInt(width);
+			y[i] = rnd.nextInt(height);
+		}
+		plot = new RandomPlot(0, width, height);
+		plot.insertAll(x, y, x.length);
+		
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < x.length; i++) {
+					best = Math.min(best, distanceSq(i, px, py));
+				}
+				closest[py * width + px] = best;
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.JumpFloodEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * With the cleanup passes every pixel must be labelled with a point at the closest 
+	 * distance, running in a pool or not.
+	 */
+	@Test
+	public void testLabelCleanup() {
+		int[] labels = new int[width * height];
+		new JumpFloodEngine(true).label(plot, width, height, labels, null);
+		assertEquals(0, countMislabelled(labels));
+		
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			new JumpFloodEngine(true).label(plot, width, height, labels, pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(0, countMislabelled(labels));
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.JumpFloodEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Without the cleanup passes only a few pixels near cell edges may be mislabelled.
+	 */
+	@Test
+	public void testLabelPlain() {
+		int[] labels = new int[width * height];
+		new JumpFloodEngine(false).label(plot, width, height, labels, null);
+		assertTrue(countMislabelled(labels) < width * height / 500);
+	}
+	
+	/**
+	 * Count the pixels labelled with a point that is not at the closest distance.
+	 * 
+	 * @param labels Labels of the area.
+	 * @return Number of mislabelled pixels.
+	 */
+	private int countMislabelled(int[] labels) {
+		int count = 0;
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				if (distanceSq(labels[py * width + px], px, py) != closest[py * width + px]) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @return Squared distance from the point at index i to px, py.
+	 */
+	private long distanceSq(int i, int px, int py) {
+		long dx = x[i] - px;
+		long dy = y[i] - py;
+		return dx * dx + dy * dy;
+	}
+}
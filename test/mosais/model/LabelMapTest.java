@@ -0,0 +1,179 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import mosais.distribution.RandomPlot;
+import mosais.distribution.SiteStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Encode labels as runs, save and load them, and check damaged files are turned down.
+ *
+ * @author Andrew Trismen
+ */
+public class LabelMapTest {
+	
+	int width = 71;
+	int height = 23;
+	int[] labels;
+	LabelMap map;
+	File file;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		RandomPlot plot = new RandomPlot(25, width, height);
+		plot.createDistribution();
+		labels = new int[width * height];
+		new TileEngine().label(plot, width, height, labels, null);
+		SiteStore sites = plot.getSites();
+		map = LabelMap.encode(labels, width, height, Arrays.copyOf(sites.getXArray(), sites.size()), 
+				Arrays.copyOf(sites.getYArray(), sites.size()), null);
+		file = File.createTempFile("labels", ".map");
+	}
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.LabelMap#decodeRow(int, int[])}.
+	 * 
+	 * Decoding every row must give back the labels, with one run per change of label.
+	 */
+	@Test
+	public void testEncode() {
+		assertEquals(width, map.getWidth());
+		assertEquals(height, map.getHeight());
+		assertEquals(25, map.getPointCount());
+		checkLabels(map);
+		
+		int runs = 0;
+		for (int i = 0; i < labels.length; i++) {
+			if (i % width == 0 || labels[i] != labels[i - 1]) {
+				runs++;
+			}
+		}
+		assertEquals(runs, map.getRunCount());
+		
+		try {
+			LabelMap.encode(labels, width, height + 1, map.getPointX(), map.getPointY(), null);
+			fail("Encoded labels not covering the area.");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.LabelMap#load(java.io.File)}.
+	 */
+	@Test
+	public void testSaveLoad() throws IOException {
+		map.save(file);
+		LabelMap loaded = LabelMap.load(file);
+		assertEquals(width, loaded.getWidth());
+		assertEquals(height, loaded.getHeight());
+		assertEquals(map.getRunCount(), loaded.getRunCount());
+		assertArrayEquals(map.getPointX(), loaded.getPointX());
+		assertArrayEquals(map.getPointY(), loaded.getPointY());
+		checkLabels(loaded);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.LabelMap#load(java.io.File)}.
+	 * 
+	 * Files with a bad header, a wrong length, or sizes, rows, runs, labels or points
+	 * out of range must be turned down.
+	 */
+	@Test
+	public void testLoadDamaged() throws IOException {
+		int points = map.getPointCount();
+		int runs = map.getRunCount();
+		int rowStarts = 6 + 2 * points;
+		int runEnds = rowStarts + height + 1;
+		int runLabels = runEnds + runs;
+		
+		checkDamaged(0, 0x12345678);
+		checkDamaged(2, -1);
+		checkDamaged(3, -height - 2);
+		checkDamaged(5, runs + 1);
+		checkDamaged(6, width);
+		checkDamaged(6 + points, -1);
+		checkDamaged(rowStarts, 1);
+		checkDamaged(rowStarts + 5, map.getRowStart(7) + 1);
+		checkDamaged(rowStarts + height, runs - 1);
+		checkDamaged(runEnds, 0);
+		checkDamaged(runEnds + map.getRowStart(1) - 1, width + 1);
+		checkDamaged(runLabels + runs / 2, points);
+		checkDamaged(runLabels, -1);
+		
+		map.save(file);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(out.length() - 4);
+		} finally {
+			out.close();
+		}
+		checkRejected();
+	}
+	
+	/**
+	 * Save the map, overwrite one int of the file, and check the file will not load.
+	 * 
+	 * @param index Index of the int in the file.
+	 * @param value Value to write over it.
+	 */
+	private void checkDamaged(int index, int value) throws IOException {
+		map.save(file);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(4L * index);
+			out.writeInt(value);
+		} finally {
+			out.close();
+		}
+		checkRejected();
+	}
+	
+	/**
+	 * Check that loading the file fails.
+	 */
+	private void checkRejected() {
+		try {
+			LabelMap.load(file);
+			fail("Loaded a damaged label map.");
+		} catch (IOException e) {
+		}
+	}
+	
+	/**
+	 * Check that every row of a map decodes to the labels.
+	 * 
+	 * @param labelMap Map to decode.
+	 */
+	private void checkLabels(LabelMap labelMap) {
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			labelMap.decodeRow(y, row);
+			for (int x = 0; x < width; x++) {
+				assertEquals(labels[y * width + x], row[x]);
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Test;
+
+/**
+ * Compare the labels of the scanline engine to a search of every point, including rows
+ * far from any point, where the band of rows searched has to widen.
+ *
+ * @author Andrew Trismen
+ */
+public class ScanlineEngineTest {
+	
+	/**
+	 * Test method for {@link mosais.model.ScanlineEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Areas only 2 pixels wide or tall, and odd sizes, with 1 to 500 points.
+	 */
+	@Test
+	public void testLabelSizes() {
+		int[][] sizes = {{2, 2}, {2, 57}, {61, 2}, {37, 29}, {101, 63}};
+		int[] counts = {1, 2, 7, 60, 500};
+		for (int[] size : sizes) {
+			for (int count : counts) {
+				Random rnd = new Random(count);
+				int[] x = new int[count];
+				int[] y = new int[count];
+				for (int i = 0; i < count; i++) {
+					x[i] = rnd.nextInt(size[0]);
+					y[i] = rnd.nextInt(size[1]);
+				}
+				checkLabels(x, y, size[0], size[1], null);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.ScanlineEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Points only on the bottom row or in one corner leave most rows with no point 
+	 * nearby, so the band must keep widening until it reaches them.
+	 */
+	@Test
+	public void testLabelEdgeRows() {
+		checkLabels(new int[] {3, 20, 21, 44}, new int[] {79, 79, 79, 79}, 45, 80, null);
+		checkLabels(new int[] {0}, new int[] {0}, 33, 47, null);
+		checkLabels(new int[] {32, 0}, new int[] {46, 46}, 33, 47, null);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.ScanlineEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Each band of rows in a pool starts with its own band width, which must not change
+	 * the result. A distribution with no points must still return.
+	 */
+	@Test
+	public void testLabelPool() {
+		Random rnd = new Random(3);
+		int[] x = new int[150];
+		int[] y = new int[150];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = rnd.nextInt(90);
+			y[i] = rnd.nextInt(40) + (i % 2) * 110;
+		}
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			checkLabels(x, y, 90, 150, pool);
+			checkLabels(x, y, 90, 150, null);
+			new ScanlineEngine().label(new RandomPlot(0, 20, 20), 20, 20, new int[400], pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Label a distribution and check every pixel is labelled with a point at the closest
+	 * distance. Points at the same distance are equally valid.
+	 * 
+	 * @param x X coordinates of the points.
+	 * @param y Y coordinates of the points.
+	 * @param width Width of the area.
+	 * @param height Height of the area.
+	 * @param pool Pool to label in, or null.
+	 */
+	private void checkLabels(int[] x, int[] y, int width, int height, ForkJoinPool pool) {
+		RandomPlot plot = new RandomPlot(0, width, height);
+		plot.insertAll(x, y, x.length);
+		
+		int[] labels = new int[width * height];
+		new ScanlineEngine().label(plot, width, height, labels, pool);
+		for (int py = 0; py < height; py++) {
+			for (int px = 0; px < width; px++) {
+				long closest = Long.MAX_VALUE;
+				for (int i = 0; i < x.length; i++) {
+					closest = Math.min(closest, distanceSq(x[i], y[i], px, py));
+				}
+				int label = labels[py * width + px];
+				assertEquals(closest, distanceSq(x[label], y[label], px, py));
+			}
+		}
+	}
+	
+	/**
+	 * @return Squared distance between two locations.
+	 */
+	private static long distanceSq(int x0, int y0, int x1, int y1) {
+		long dx = x0 - x1;
+		long dy = y0 - y1;
+		return dx * dx + dy * dy;
+	}
+}
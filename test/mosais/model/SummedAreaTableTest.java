@@ -0,0 +1,93 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import mosais.image.PixelRaster;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compare box sums to sums worked out pixel by pixel, over a gray image large enough 
+ * that its total no longer fits in 32 bits.
+ *
+ * @author Andrew Trismen
+ */
+public class SummedAreaTableTest {
+	
+	static int width = 4200;
+	static int height = 4100;
+	static PixelRaster raster;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				data[y * width + x] = (byte)value(x, y);
+			}
+		}
+		raster = PixelRaster.wrap(image);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.SummedAreaTable#sum(int, int, int, int, int)}.
+	 * 
+	 * Int sums wrap around well before the bottom right corner, but boxes no larger than
+	 * MAX_INT_BOX_AREA must still sum exactly, wherever they are.
+	 */
+	@Test
+	public void testSumInt() {
+		assertTrue((long)width * height > SummedAreaTable.MAX_INT_BOX_AREA);
+		SummedAreaTable table = new SummedAreaTable(raster, SummedAreaTable.MAX_INT_BOX_AREA, null);
+		checkBox(table, 0, 0, 0, 0);
+		checkBox(table, 17, 3, 40, 95);
+		checkBox(table, width - 31, height - 12, width - 1, height - 1);
+		checkBox(table, width - 4100, height - 4100, width - 1, height - 1);
+		checkBox(table, 0, 0, 4099, 4099);
+	}
+	
+	/**
+	 * Test method for {@link mosais.model.SummedAreaTable#sum(int, int, int, int, int)}.
+	 * 
+	 * A box larger than MAX_INT_BOX_AREA needs long sums.
+	 */
+	@Test
+	public void testSumLong() {
+		SummedAreaTable table = new SummedAreaTable(raster, (long)width * height, null);
+		checkBox(table, 0, 0, width - 1, height - 1);
+		checkBox(table, 1, 2, width - 2, height - 1);
+		checkBox(table, width - 31, height - 12, width - 1, height - 1);
+	}
+	
+	/**
+	 * Check the sum of a box against a sum of each of its pixels.
+	 */
+	private static void checkBox(SummedAreaTable table, int x0, int y0, int x1, int y1) {
+		long expected = 0;
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				expected += value(x, y);
+			}
+		}
+		assertEquals(expected, table.sum(0, x0, y0, x1, y1));
+	}
+	
+	/**
+	 * @return Gray level of a pixel of the test image, close to white so that the sum
+	 * of the whole image passes 2^32.
+	 */
+	private static int value(int x, int y) {
+		return 255 - ((x * y) & 3);
+	}
+}
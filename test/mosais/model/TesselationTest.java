@@ -0,0 +1,50 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Test;
+
+/**
+ * Check when a tesselation keeps its label map and when it labels again.
+ *
+ * @author Andrew Trismen
+ */
+public class TesselationTest {
+	
+	/**
+	 * Test method for {@link mosais.model.Tesselation#setEngine(mosais.model.LabelEngine)}.
+	 * 
+	 * Changing the engine or the error bound must drop the label map, so the next mosaic
+	 * is labelled with the new settings.
+	 */
+	@Test
+	public void testSettingsDropLabelMap() {
+		RandomPlot plot = new RandomPlot(20, 40, 30);
+		plot.createDistribution();
+		Tesselation tesselation = new Tesselation(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), plot);
+		tesselation.setParallelism(1);
+		tesselation.applyMosaic();
+		LabelMap first = tesselation.getLabelMap();
+		assertNotNull(first);
+		tesselation.applyMosaic();
+		assertSame(first, tesselation.getLabelMap());
+		
+		tesselation.setEngine(new ScanlineEngine());
+		assertNull(tesselation.getLabelMap());
+		tesselation.applyMosaic();
+		LabelMap second = tesselation.getLabelMap();
+		assertNotSame(first, second);
+		
+		tesselation.setEpsilon(0.5);
+		assertNull(tesselation.getLabelMap());
+		tesselation.applyMosaic();
+		assertNotSame(second, tesselation.getLabelMap());
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * 
+ */
+package mosais.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.List;
+
+import mosais.distribution.RandomPlot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the labels of the tile engine to a search of every point, with tiles that
+ * do not divide the area evenly.
+ *
+ * @author Andrew Trismen
+ */
+public class TileEngineTest {
+	
+	RandomPlot plot;
+	int width = 123;
+	int height = 77;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		plot = new RandomPlot(60, width, height);
+		plot.createDistribution();
+	}
+
+	/**
+	 * Test method for {@link mosais.model.TileEngine#label(mosais.distribution.PlotTree, int, int, int[], java.util.concurrent.ForkJoinPool)}.
+	 * 
+	 * Every pixel must be labelled with a point at the closest distance. Points at the 
+	 * same distance are equally valid.
+	 */
+	@Test
+	public void testLabel() {
+		int[] labels = new int[width * height];
+		new TileEngine(16).label(plot, width, height, labels, null);
+		
+		List<Point> points = plot.getDistributionAsList();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double closest = Double.MAX_VALUE;
+				for (Point p : points) {
+					closest = Math.min(closest, p.distanceSq(x, y));
+				}
+				assertEquals(closest, points.get(labels[y * width + x]).distanceSq(x, y), 0);
+			}
+		}
+	}
+}